@@ -0,0 +1,109 @@
+package com.gusturelock2;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.test.InstrumentationTestCase;
+import android.view.MotionEvent;
+import android.view.View;
+import widget.LockPatternView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fails if drawing a pattern allocates once warmed up: whole gestures of
+ * {@link LockPatternView#onTouchEvent} moves through every cell, each move
+ * followed by a draw, with allocation counting on.
+ */
+public class DrawAllocationTest extends InstrumentationTestCase {
+
+    private static final int SIZE = 900;
+    private static final int WARM_UP_GESTURES = 3;
+    private static final int GESTURES = 10;
+    // samples per move event, as a touch panel faster than the display batches them
+    private static final int BATCH = 4;
+
+    private int mAllocations;
+    private int mAllocatedBytes;
+
+    public void testGesturesDoNotAllocate() {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final LockPatternView view = new LockPatternView(getInstrumentation().getTargetContext());
+                view.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+                view.layout(0, 0, SIZE, SIZE);
+                final Canvas canvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+                final List<MotionEvent> gesture = newGesture();
+
+                for (int i = 0; i < WARM_UP_GESTURES; i++) {
+                    play(view, canvas, gesture);
+                }
+                Debug.resetThreadAllocCount();
+                Debug.startAllocCounting();
+                for (int i = 0; i < GESTURES; i++) {
+                    play(view, canvas, gesture);
+                }
+                Debug.stopAllocCounting();
+                mAllocations = Debug.getThreadAllocCount();
+                mAllocatedBytes = Debug.getThreadAllocSize();
+
+                for (MotionEvent event : gesture) {
+                    event.recycle();
+                }
+            }
+        });
+        assertEquals(mAllocations + " allocations, " + mAllocatedBytes + " bytes", 0, mAllocations);
+    }
+
+    private static void play(LockPatternView view, Canvas canvas, List<MotionEvent> gesture) {
+        for (MotionEvent event : gesture) {
+            view.onTouchEvent(event);
+            view.draw(canvas);
+        }
+    }
+
+    /**
+     * @return a down on the first cell, moves snaking through the centers of
+     * all the cells of the default 3 X 3 grid, and an up on the last one.
+     */
+    private static List<MotionEvent> newGesture() {
+        final float square = SIZE / 3f;
+        final List<float[]> points = new ArrayList<float[]>();
+        for (int row = 0; row < 3; row++) {
+            for (int i = 0; i < 3; i++) {
+                final int column = row % 2 == 0 ? i : 2 - i;
+                points.add(new float[]{column * square + square / 2, row * square + square / 2});
+            }
+        }
+        final List<MotionEvent> gesture = new ArrayList<MotionEvent>();
+        final long downTime = 1000;
+        long time = downTime;
+        float[] from = points.get(0);
+        gesture.add(MotionEvent.obtain(downTime, time, MotionEvent.ACTION_DOWN, from[0], from[1], 0));
+        for (int p = 1; p < points.size(); p++) {
+            final float[] to = points.get(p);
+            // 24 samples of 4ms from one center to the next
+            for (int s = 1; s <= 24; s += BATCH) {
+                MotionEvent move = null;
+                for (int b = 0; b < BATCH; b++) {
+                    final float f = (s + b) / 24f;
+                    final float x = from[0] + (to[0] - from[0]) * f;
+                    final float y = from[1] + (to[1] - from[1]) * f;
+                    time += 4;
+                    if (move == null) {
+                        move = MotionEvent.obtain(downTime, time, MotionEvent.ACTION_MOVE, x, y, 0);
+                    } else {
+                        move.addBatch(time, x, y, 1f, 1f, 0);
+                    }
+                }
+                gesture.add(move);
+            }
+            from = to;
+        }
+        gesture.add(MotionEvent.obtain(downTime, time + 4, MotionEvent.ACTION_UP, from[0], from[1], 0));
+        return gesture;
+    }
+}
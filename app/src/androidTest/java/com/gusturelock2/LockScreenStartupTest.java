@@ -0,0 +1,70 @@
+package com.gusturelock2;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import widget.LockPatternStore;
+
+/**
+ * Launching the app with a pattern set goes straight to the lock screen: the
+ * main layout is left uninflated and the lock screen reuses the pattern read
+ * by the launch. The time until the lock screen takes input is logged, not
+ * checked; the test process is already running, so it is the activity path of
+ * a launch, not process creation. {@code MainActivityStartupTest} checks the
+ * same order on the JVM.
+ */
+public class LockScreenStartupTest extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    private static final String TAG = "LockScreenStartupTest";
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private LockPatternStore mStore;
+
+    public LockScreenStartupTest() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mStore = MainActivity.getPatternStore(getInstrumentation().getTargetContext());
+        mStore.setStoredPattern("\u0000\u0001\u0002\u0005\u0008");
+        mStore.flush();
+        // read cold by the launch, as after a process start
+        mStore.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mStore = MainActivity.getPatternStore(getInstrumentation().getTargetContext());
+        mStore.clear();
+        mStore.flush();
+        super.tearDown();
+    }
+
+    public void testLockedLaunchGoesStraightToTheLockScreen() throws Exception {
+        final Instrumentation.ActivityMonitor monitor = getInstrumentation()
+                .addMonitor(LockActivity.class.getName(), null, false);
+        final long start = SystemClock.uptimeMillis();
+        final MainActivity main = getActivity();
+        final Activity lock = monitor.waitForActivityWithTimeout(TIMEOUT_MILLIS);
+        getInstrumentation().removeMonitor(monitor);
+        assertNotNull("lock screen not shown", lock);
+
+        // the pattern takes input once the lock screen has the focus
+        while (!lock.hasWindowFocus() && SystemClock.uptimeMillis() - start < TIMEOUT_MILLIS) {
+            Thread.sleep(2);
+        }
+        final long timeToInteractive = SystemClock.uptimeMillis() - start;
+
+        assertTrue("lock screen never took focus", timeToInteractive < TIMEOUT_MILLIS);
+        // the main layout is left uninflated until the user is back from the lock screen
+        assertNull(main.findViewById(R.id.lock));
+        // the lock screen got the store opened by the launch, pattern and all
+        assertSame(MainActivity.getPatternStore(main), MainActivity.getPatternStore(lock));
+        Log.i(TAG, "time to interactive: " + timeToInteractive + " ms");
+        lock.finish();
+    }
+}
@@ -0,0 +1,55 @@
+package com.gusturelock2;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import widget.LockPatternCode;
+import widget.LockPatternHasher;
+import widget.LockPatternStore;
+
+import java.io.File;
+
+/**
+ * Compares, on a device, what saving the pattern costs the calling thread
+ * with {@link SharedPreferences} and with {@link LockPatternStore}.
+ */
+public class PatternStoreTimingTest extends AndroidTestCase {
+
+    private static final String TAG = "PatternStoreTiming";
+    private static final int RUNS = 50;
+
+    public void testWriteBehindIsCheaperThanCommit() throws Exception {
+        final Context context = getContext();
+        final String value = new LockPatternHasher(LockPatternHasher.MIN_ITERATIONS)
+                .hash(LockPatternCode.fromString("\u0000\u0001\u0002\u0005\u0008", 3));
+
+        final SharedPreferences preferences = context.getSharedPreferences("timing_test", Context.MODE_PRIVATE);
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            // a different value each time, unchanged values are not written
+            preferences.edit().putString("pattern", value + i).commit();
+        }
+        final long commitNanos = (System.nanoTime() - start) / RUNS;
+        start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            preferences.edit().putString("pattern", value + (RUNS + i)).apply();
+        }
+        final long applyNanos = (System.nanoTime() - start) / RUNS;
+        preferences.edit().clear().commit();
+
+        final LockPatternStore store = LockPatternStore.open(new File(context.getFilesDir(), "timing_test"));
+        start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            store.setStoredPattern(value);
+        }
+        final long storeNanos = (System.nanoTime() - start) / RUNS;
+        store.flush();
+        store.clear();
+        store.close();
+
+        Log.i(TAG, "caller cost per write: SharedPreferences commit " + commitNanos / 1000
+                + " us, apply " + applyNanos / 1000 + " us, LockPatternStore " + storeNanos / 1000 + " us");
+        assertTrue(storeNanos < commitNanos);
+    }
+}
@@ -0,0 +1,80 @@
+package com.gusturelock2;
+
+import android.content.res.AssetManager;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+import android.view.View;
+import widget.LockPatternTraceReplay;
+import widget.LockPatternView;
+import widget.TouchTrace;
+import widget.TouchTraceReplayer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Replays the trace fixtures of lockpattern-core, packaged as assets of the
+ * test apk, into a {@link LockPatternView} laid out like the grid they were
+ * recorded on. What needs no view, the patterns, the processing time in the
+ * engine and the bounds each move redraws, is checked on the JVM by
+ * {@code TouchTraceReplayerTest}; this adds the area the view invalidates.
+ */
+public class TraceReplayTest extends InstrumentationTestCase {
+
+    private static final String TAG = "TraceReplay";
+    // handling one touch event must stay well inside a 16ms frame
+    private static final long MAX_EVENT_NANOS = 4000000;
+
+    private TouchTraceReplayer.Result mResult;
+
+    public void testFixtures() throws Exception {
+        final AssetManager assets = getInstrumentation().getContext().getAssets();
+        final String[] fixtures = assets.list("");
+        int replayed = 0;
+        for (String fixture : fixtures) {
+            if (!fixture.endsWith(".trace")) {
+                continue;
+            }
+            final Reader reader = new InputStreamReader(assets.open(fixture), "UTF-8");
+            final TouchTrace trace;
+            try {
+                trace = TouchTrace.read(reader);
+            } finally {
+                reader.close();
+            }
+            final TouchTraceReplayer.Result result = replay(trace);
+            Log.i(TAG, fixture + " " + result);
+            replayed++;
+
+            assertTrue(fixture + " " + result, result.isDetected());
+            assertEquals(fixture, trace.getExpectedPattern(), result.getPattern());
+            assertTrue(fixture + " " + result, result.getEventNanosPercentile(100) < MAX_EVENT_NANOS);
+            // moves only redraw the band and the cells around it, never the whole view
+            final long viewArea = (long) trace.getWidth() * (long) trace.getHeight();
+            for (int event = 0; event < result.getEventCount(); event++) {
+                if (trace.getAction(event) == TouchTrace.ACTION_MOVE) {
+                    assertTrue(fixture + " event " + event + " " + result,
+                            result.getInvalidatedArea(event) < viewArea);
+                }
+            }
+        }
+        assertTrue(replayed > 0);
+    }
+
+    private TouchTraceReplayer.Result replay(final TouchTrace trace) {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final LockPatternView view = new LockPatternView(getInstrumentation().getTargetContext(),
+                        trace.getHitFactor());
+                view.measure(View.MeasureSpec.makeMeasureSpec((int) trace.getWidth(), View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec((int) trace.getHeight(), View.MeasureSpec.EXACTLY));
+                view.layout((int) trace.getLeft(), (int) trace.getTop(),
+                        (int) (trace.getLeft() + trace.getWidth()), (int) (trace.getTop() + trace.getHeight()));
+                mResult = LockPatternTraceReplay.replay(view, trace);
+            }
+        });
+        return mResult;
+    }
+}
@@ -1,41 +1,87 @@
 package com.gusturelock2;
 
 import android.app.Activity;
-import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Menu;
 import android.widget.Toast;
+import widget.Cell;
+import widget.LockPatternCode;
+import widget.LockPatternHasher;
+import widget.LockPatternMetrics;
+import widget.LockPatternStore;
+import widget.LockPatternVerifier;
 import widget.LockPatternView;
-import widget.LockPatternView.Cell;
 
 import java.util.List;
 
 
 public class LockActivity extends Activity implements
-        LockPatternView.OnPatternListener {
+        LockPatternView.OnPatternListener, LockPatternVerifier,
+        LockPatternVerifier.Callback, LockPatternMetrics.OnJankListener {
     private static final String TAG = "LockActivity";
 
-    private List<Cell> lockPattern;
+    /**
+     * Read by {@link #verify} on the verifier thread.
+     */
+    private volatile String lockPattern;
+    private int gridSize;
     private LockPatternView lockPatternView;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        SharedPreferences preferences = getSharedPreferences(MainActivity.LOCK,
-                MODE_PRIVATE);
-        String patternString = preferences.getString(MainActivity.LOCK_KEY,
-                null);
-        if (patternString == null) {
+        LockPatternStore store = MainActivity.getPatternStore(this);
+        String patternString = store.getStoredPattern();
+        if (patternString == null && !store.isCorrupt()) {
             finish();
             return;
         }
-        lockPattern = LockPatternView.stringToPattern(patternString);
         setContentView(R.layout.activity_lock);
         lockPatternView = (LockPatternView) findViewById(R.id.lock_pattern);
         lockPatternView.setOnPatternListener(this);
+        lockPatternView.setPatternVerifier(this, this);
+        // report jank on the lock screen in production builds too
+        lockPatternView.setMetricsEnabled(true);
+        lockPatternView.getMetrics().setOnJankListener(this);
+        lockPatternView.setLatencyTrackingEnabled(true);
+        lockPatternView.setInvalidationPolicy(LockPatternView.InvalidationPolicy.Adaptive);
+        gridSize = lockPatternView.getGridSize();
+        lockPattern = patternString;
+        if (patternString == null) {
+            // a damaged record stays locked, no pattern matches it
+            Toast.makeText(this, R.string.lockpattern_store_corrupt, Toast.LENGTH_LONG).show();
+        }
+
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasFocus) {
+        super.onWindowFocusChanged(hasFocus);
+        // the first focus after a launch is when the pattern takes input
+        if (hasFocus && MainActivity.sLaunchUptime != 0) {
+            Log.i(TAG, "time to interactive: "
+                    + (SystemClock.uptimeMillis() - MainActivity.sLaunchUptime) + " ms");
+            MainActivity.sLaunchUptime = 0;
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (lockPatternView != null) {
+            lockPatternView.setPatternVerifier(null, null);
+            Log.i(TAG, "render metrics: " + lockPatternView.getMetrics());
+            Log.i(TAG, "input latency: " + lockPatternView.getLatencyTracker());
+        }
+        super.onDestroy();
+    }
 
+    @Override
+    public void onJankFrame(LockPatternMetrics metrics, float frameMillis) {
+        Log.w(TAG, "animation frame took " + frameMillis + " ms, "
+                + metrics.getJankFrames() + "/" + metrics.getAnimationFrames() + " frames janky");
     }
 
     @Override
@@ -64,21 +110,41 @@ public class LockActivity extends Activity implements
     @Override
     public void onPatternCellAdded(List<Cell> pattern) {
         Log.d(TAG, "onPatternCellAdded");
-        Log.e(TAG, LockPatternView.patternToString(pattern));
     }
 
     @Override
     public void onPatternDetected(List<Cell> pattern) {
         Log.d(TAG, "onPatternDetected");
-        if (pattern.equals(lockPattern)) {
+    }
+
+    @Override
+    public boolean verify(LockPatternCode code) {
+        final String stored = lockPattern;
+        if (stored == null) {
+            return false;
+        }
+        if (LockPatternHasher.isHashed(stored)) {
+            return LockPatternHasher.verify(stored, code);
+        }
+        // pattern saved in plain text by an older version, hash it on the
+        // first successful unlock
+        if (!LockPatternCode.fromString(stored, gridSize).equals(code)) {
+            return false;
+        }
+        LockPatternHasher hasher = new LockPatternHasher(MainActivity.getHashIterations(this));
+        lockPattern = hasher.hash(code);
+        MainActivity.getPatternStore(this).setStoredPattern(lockPattern);
+        return true;
+    }
+
+    @Override
+    public void onPatternVerified(LockPatternCode code, boolean matched) {
+        if (matched) {
             finish();
         } else {
             Toast.makeText(this, R.string.lockpattern_error, Toast.LENGTH_LONG)
                     .show();
-            lockPatternView.setDisplayMode(LockPatternView.DisplayMode.Wrong);
-
         }
-
     }
 
 }
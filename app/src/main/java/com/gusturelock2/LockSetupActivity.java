@@ -1,8 +1,8 @@
 package com.gusturelock2;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.Menu;
@@ -12,10 +12,14 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.LinearLayout;
 import android.widget.Toast;
+import widget.Cell;
+import widget.LockPatternCode;
+import widget.LockPatternHasher;
+import widget.LockPatternStore;
 import widget.LockPatternView;
-import widget.LockPatternView.Cell;
 import widget.LockPatternView.DisplayMode;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -116,18 +120,7 @@ public class LockSetupActivity extends Activity implements
                     step = STEP_3;
                     updateView();
                 } else if (step == STEP_4) {
-
-                    SharedPreferences preferences = getSharedPreferences(
-                            MainActivity.LOCK, MODE_PRIVATE);
-                    preferences
-                            .edit()
-                            .putString(MainActivity.LOCK_KEY,
-                                    LockPatternView.patternToString(choosePattern))
-                            .commit();
-
-                    Intent intent = new Intent(this, LockActivity.class);
-                    startActivity(intent);
-                    finish();
+                    savePattern(LockPatternCode.of(choosePattern, lockPatternView.getGridSize()));
                 }
 
                 break;
@@ -138,6 +131,56 @@ public class LockSetupActivity extends Activity implements
 
     }
 
+    /**
+     * Hashes and stores {@code code} on a background thread and waits until it
+     * is on disk, then moves on to the lock screen.
+     */
+    private void savePattern(final LockPatternCode code) {
+        leftButton.setEnabled(false);
+        rightButton.setEnabled(false);
+        final Context context = getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // hash as expensive as unlocking on this device allows
+                LockPatternHasher hasher = new LockPatternHasher(MainActivity.getHashIterations(context));
+                LockPatternStore store = MainActivity.getPatternStore(context);
+                boolean saved = false;
+                try {
+                    store.setStoredPattern(hasher.hash(code));
+                    store.flush();
+                    saved = true;
+                } catch (IOException e) {
+                    Log.w(TAG, "cannot save the pattern", e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                final boolean success = saved;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPatternSaved(success);
+                    }
+                });
+            }
+        }, "LockSetup").start();
+    }
+
+    private void onPatternSaved(boolean saved) {
+        if (isFinishing()) {
+            return;
+        }
+        if (!saved) {
+            Toast.makeText(this, R.string.lockpattern_save_failed, Toast.LENGTH_LONG).show();
+            leftButton.setEnabled(true);
+            updateView();
+            return;
+        }
+        Intent intent = new Intent(this, LockActivity.class);
+        startActivity(intent);
+        finish();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main, menu);
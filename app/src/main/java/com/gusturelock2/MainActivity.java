@@ -1,32 +1,124 @@
 package com.gusturelock2;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.Menu;
 import android.view.View;
 import android.view.View.OnClickListener;
 import widget.LockMovePoint;
+import widget.LockPatternHasher;
+import widget.LockPatternStore;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MainActivity extends Activity implements OnClickListener {
+    private static final String TAG = "MainActivity";
     public static final String LOCK = "lock";
     public static final String LOCK_KEY = "lock_key";
+    static final String PATTERN_FILE = "lock_pattern";
+    private static final String HASHER = "lock_hasher";
+    private static final String HASH_ITERATIONS_KEY = "iterations";
+    static final int REQUEST_UNLOCK = 1;
+    /**
+     * Set by the first {@link #getPatternStore}, which may run on the verifier thread.
+     */
+    private static final AtomicBoolean sPatternMigrated = new AtomicBoolean();
+    private static volatile int sHashIterations;
+    /**
+     * Launch time of the app, read once by {@link LockActivity} to log the
+     * time until the lock screen takes input.
+     */
+    static long sLaunchUptime;
+    private boolean mContentInflated;
+
+    /**
+     * @return the pattern store of the app. The first call moves a pattern
+     * saved by older versions out of the SharedPreferences file.
+     */
+    static LockPatternStore getPatternStore(Context context) {
+        final LockPatternStore store = LockPatternStore.open(
+                new File(context.getFilesDir(), PATTERN_FILE));
+        if (sPatternMigrated.compareAndSet(false, true) && !store.hasPattern()) {
+            final SharedPreferences preferences = context.getSharedPreferences(LOCK, MODE_PRIVATE);
+            String patternString = preferences.getString(LOCK_KEY, null);
+            if (patternString != null) {
+                // readable from the cache at once, on disk a little later
+                store.setStoredPattern(patternString);
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // only drop the old copy once the new one is on disk
+                        try {
+                            store.flush();
+                            preferences.edit().clear().apply();
+                        } catch (IOException e) {
+                            Log.w(TAG, "pattern migration failed", e);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }, "PatternMigration").start();
+            }
+        }
+        return store;
+    }
+
+    /**
+     * @return the PBKDF2 iteration count for new pattern hashes on this
+     * device. Calibrated once, which takes about half a second, and kept in
+     * preferences after that; call off the main thread.
+     */
+    static int getHashIterations(Context context) {
+        int iterations = sHashIterations;
+        if (iterations == 0) {
+            SharedPreferences preferences = context.getSharedPreferences(HASHER, MODE_PRIVATE);
+            iterations = preferences.getInt(HASH_ITERATIONS_KEY, 0);
+            if (iterations < LockPatternHasher.MIN_ITERATIONS) {
+                iterations = LockPatternHasher.calibrate(LockPatternHasher.DEFAULT_BUDGET_MILLIS);
+                preferences.edit().putInt(HASH_ITERATIONS_KEY, iterations).apply();
+            }
+            sHashIterations = iterations;
+        }
+        return iterations;
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
+        final long launchUptime = SystemClock.uptimeMillis();
 
-        SharedPreferences preferences = getSharedPreferences(LOCK, MODE_PRIVATE);
-        String lockPattenString = preferences.getString(LOCK_KEY, null);
-        if (lockPattenString != null) {
+        // the lock screen covers this activity, so its layout is only
+        // inflated once the user is back from it
+        if (savedInstanceState == null && getPatternStore(this).hasPattern()) {
+            sLaunchUptime = launchUptime;
             Intent intent = new Intent(this, LockActivity.class);
-            startActivity(intent);
+            startActivityForResult(intent, REQUEST_UNLOCK);
+        } else {
+            inflateContent();
+        }
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQUEST_UNLOCK) {
+            inflateContent();
+        }
+    }
 
+    private void inflateContent() {
+        if (!mContentInflated) {
+            mContentInflated = true;
+            setContentView(R.layout.activity_main);
         }
     }
 
@@ -38,7 +130,7 @@ public class MainActivity extends Activity implements OnClickListener {
                 startActivity(intent);
                 break;
             case R.id.unlock:
-                getSharedPreferences(LOCK, MODE_PRIVATE).edit().clear().commit();
+                getPatternStore(this).clear();
                 break;
 
             default:
@@ -0,0 +1,99 @@
+package widget;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a {@link LockPatternVerifier} off the main thread.
+ * <p/>
+ * Work goes to a single background thread with a queue of one; a newer pattern
+ * replaces one that is still waiting. Every submit or {@link #cancel()} starts
+ * a new generation, and results of older generations are dropped instead of
+ * being posted back, so a pattern started while the previous one is still being
+ * verified never sees the old result. A verifier that throws counts as a
+ * mismatch.
+ */
+public class AsyncLockPatternVerifier {
+
+    private static final String TAG = "AsyncLockPatternVerifier";
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final LockPatternVerifier mVerifier;
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    public AsyncLockPatternVerifier(LockPatternVerifier verifier) {
+        mVerifier = verifier;
+        mExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(1), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "LockPatternVerifier");
+            }
+        }, new ThreadPoolExecutor.DiscardOldestPolicy());
+        // no thread is kept around while nobody draws patterns
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public LockPatternVerifier getVerifier() {
+        return mVerifier;
+    }
+
+    /**
+     * Verifies {@code code} in the background and hands the result to
+     * {@code callback} on the main thread, unless it went stale first.
+     */
+    public void submit(final LockPatternCode code, final LockPatternVerifier.Callback callback) {
+        final int generation = mGeneration.incrementAndGet();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration.get()) {
+                    return;
+                }
+                final boolean matched = verify(code);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration.get()) {
+                            callback.onPatternVerified(code, matched);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the verifier's result, false if it threw: a stored pattern that
+     * cannot be read must neither unlock nor leave the view waiting.
+     */
+    private boolean verify(LockPatternCode code) {
+        try {
+            return mVerifier.verify(code);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "pattern verification failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Drops the result of any pending verification. Call on the main thread.
+     */
+    public void cancel() {
+        mGeneration.incrementAndGet();
+    }
+
+    public void shutdown() {
+        cancel();
+        mExecutor.shutdown();
+    }
+}
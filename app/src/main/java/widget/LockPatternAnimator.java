@@ -0,0 +1,71 @@
+package widget;
+
+import android.graphics.Rect;
+import android.view.Choreographer;
+
+/**
+ * Single frame clock for everything that animates inside a {@link LockPatternView}.
+ * <p/>
+ * Rings and the error line do not own animators; once per vsync this advances
+ * their state through {@link LockPatternHelper#onAnimationFrame(long, Rect)},
+ * invalidates the area of the rings and line that changed at most once, and
+ * stops requesting frames as soon as nothing is animating any more.
+ */
+public class LockPatternAnimator implements Choreographer.FrameCallback {
+
+    private final LockPatternView mView;
+    private final Choreographer mChoreographer;
+    private final Rect mDirty = new Rect();
+    private boolean mFrameScheduled;
+    private long mFrameTime;
+
+    public LockPatternAnimator(LockPatternView view) {
+        mView = view;
+        mChoreographer = Choreographer.getInstance();
+    }
+
+    /**
+     * @return the time of the last animation frame, in the
+     * {@link android.view.animation.AnimationUtils#currentAnimationTimeMillis()} time base.
+     */
+    public long getFrameTime() {
+        return mFrameTime;
+    }
+
+    /**
+     * Makes sure a frame is coming. Call this after starting any ring or line animation.
+     */
+    public void start() {
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            mChoreographer.postFrameCallback(this);
+        }
+    }
+
+    public void stop() {
+        if (mFrameScheduled) {
+            mFrameScheduled = false;
+            mChoreographer.removeFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+        mFrameTime = frameTimeNanos / 1000000;
+        final LockPatternMetrics metrics = mView.getMetrics();
+        final long start = metrics != null ? System.nanoTime() : 0;
+        final Rect dirty = mDirty;
+        dirty.setEmpty();
+        final boolean animating = mView.getHelper().onAnimationFrame(mFrameTime, dirty);
+        if (!dirty.isEmpty()) {
+            mView.invalidate(dirty);
+        }
+        if (metrics != null) {
+            metrics.recordAnimationFrame(frameTimeNanos, start, System.nanoTime());
+        }
+        if (animating) {
+            start();
+        }
+    }
+}
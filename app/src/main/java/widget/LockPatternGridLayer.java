@@ -0,0 +1,92 @@
+package widget;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+/**
+ * Offscreen bitmap layer of a {@link LockPatternView}. One holds the idle grid,
+ * every ring in its idle look, drawn once; {@code onDraw} blits it and draws
+ * only the rings that are not idle live on top. Another holds all rings plus
+ * the path through the cells while nothing animates, so tracking the finger
+ * only draws the rubber band tip.
+ * <p/>
+ * The layer is keyed on the view size, its padding and the ring size; the
+ * ring colors are fixed when the view is created. It is dropped on low memory
+ * and when the view is detached, and rebuilt on the next draw.
+ */
+public class LockPatternGridLayer implements ComponentCallbacks2 {
+
+    private final Canvas mCanvas = new Canvas();
+    private Bitmap mBitmap;
+    private int mWidth, mHeight;
+    private int mPaddingLeft, mPaddingTop, mPaddingRight, mPaddingBottom;
+    private int mRingRadius;
+
+    /**
+     * @return whether the layer holds the grid of a view with this geometry.
+     */
+    public boolean isValid(int width, int height, int paddingLeft, int paddingTop,
+                           int paddingRight, int paddingBottom, int ringRadius) {
+        return mBitmap != null && width == mWidth && height == mHeight
+                && paddingLeft == mPaddingLeft && paddingTop == mPaddingTop
+                && paddingRight == mPaddingRight && paddingBottom == mPaddingBottom
+                && ringRadius == mRingRadius;
+    }
+
+    /**
+     * Clears the layer for a view with this geometry.
+     *
+     * @return the canvas to draw the idle grid into, or null if the view is empty.
+     */
+    public Canvas begin(int width, int height, int paddingLeft, int paddingTop,
+                        int paddingRight, int paddingBottom, int ringRadius) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        if (mBitmap == null || width != mWidth || height != mHeight) {
+            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } else {
+            mBitmap.eraseColor(0);
+        }
+        mWidth = width;
+        mHeight = height;
+        mPaddingLeft = paddingLeft;
+        mPaddingTop = paddingTop;
+        mPaddingRight = paddingRight;
+        mPaddingBottom = paddingBottom;
+        mRingRadius = ringRadius;
+        mCanvas.setBitmap(mBitmap);
+        return mCanvas;
+    }
+
+    /**
+     * @return the layer, null until {@link #begin} was called.
+     */
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    public void release() {
+        // not recycled: a display list still being rendered may refer to it
+        mBitmap = null;
+        mCanvas.setBitmap(null);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            release();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        release();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
@@ -2,8 +2,11 @@ package widget;
 
 import android.graphics.Canvas;
 import android.graphics.Path;
+import android.graphics.Rect;
+import android.view.animation.AnimationUtils;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by dupengtao on 14-9-4.
@@ -11,24 +14,71 @@ import java.util.ArrayList;
 public class LockPatternHelper {
 
     public static final int DISAPPEAR_TIME = 250;
+    /**
+     * Ring state of each cell, created on the first hit of the cell; cells
+     * without one are drawn with {@link #mIdleRing}.
+     */
     private final LockPatternRing[][] mLockPatternRings;
+    private final LockPatternRing mIdleRing;
     private final LockPatternLine mLockPatternLine;
     private final LockPatternView mLockPatternView;
+    private final LockPatternAnimator mLockPatternAnimator;
     private Runnable mResetCallback;
     private boolean mIsReset;
     public boolean isLineError;
     private int mErrorCellSize;
     private ArrayList<LockMovePoint> mLockMovePoints = new ArrayList<LockMovePoint>();
-    private ArrayList<LockPatternView.Cell> mErrorCells = new ArrayList<LockPatternView.Cell>();
+    private ArrayList<Cell> mErrorCells = new ArrayList<Cell>();
+    private Rect mFrameDirty;
 
-    public LockPatternHelper(LockPatternView lockPatternView, LockPatternRing[][] lockPatternRings, LockPatternLine lockPatternLine) {
-        mLockPatternRings = lockPatternRings;
+    /**
+     * @param idleRing The look of all rings, drawn as is for every cell that was never hit.
+     */
+    public LockPatternHelper(LockPatternView lockPatternView, LockPatternRing idleRing, int gridSize,
+                             LockPatternLine lockPatternLine, LockPatternAnimator lockPatternAnimator) {
+        mIdleRing = idleRing;
+        mLockPatternRings = new LockPatternRing[gridSize][gridSize];
         mLockPatternLine = lockPatternLine;
         mLockPatternView = lockPatternView;
+        mLockPatternAnimator = lockPatternAnimator;
     }
 
-    public LockPatternRing[][] getLockPatternRings() {
-        return mLockPatternRings;
+    /**
+     * @return the ring to draw for a cell.
+     */
+    public LockPatternRing getRing(int row, int column) {
+        final LockPatternRing ring = mLockPatternRings[row][column];
+        return ring != null ? ring : mIdleRing;
+    }
+
+    /**
+     * @return the ring every ring copies its size and colors from.
+     */
+    public LockPatternRing getIdleRing() {
+        return mIdleRing;
+    }
+
+    private LockPatternRing obtainRing(int row, int column) {
+        LockPatternRing ring = mLockPatternRings[row][column];
+        if (ring == null) {
+            ring = new LockPatternRing(mIdleRing);
+            mLockPatternRings[row][column] = ring;
+        }
+        return ring;
+    }
+
+    /**
+     * Shrinks the rings to fit cells of {@code cellSize} pixels, for large grids.
+     */
+    public void setCellSize(float cellSize) {
+        mIdleRing.setCellSize(cellSize);
+        for (int i = 0; i < mLockPatternRings.length; i++) {
+            for (int j = 0; j < mLockPatternRings[i].length; j++) {
+                if (mLockPatternRings[i][j] != null) {
+                    mLockPatternRings[i][j].setCellSize(cellSize);
+                }
+            }
+        }
     }
 
     public LockPatternLine getLockPatternLine() {
@@ -42,7 +92,54 @@ public class LockPatternHelper {
             mIsReset = false;
             isLineError = false;
         }
-        mLockPatternRings[row][column].downAnim();
+        obtainRing(row, column).downAnim(AnimationUtils.currentAnimationTimeMillis());
+        mLockPatternAnimator.start();
+    }
+
+    /**
+     * Advances the error line and the rings, once per frame.
+     *
+     * @param dirty receives the area of every ring and line that changed.
+     * @return whether anything is still animating after {@code frameTime}.
+     */
+    public boolean onAnimationFrame(long frameTime, Rect dirty) {
+        mFrameDirty = dirty;
+        final boolean lineAnimating = mLockPatternLine.isAnimating();
+        boolean animating = mLockPatternLine.onAnimationFrame(frameTime);
+        if (lineAnimating) {
+            mLockPatternLine.unionErrorBounds(dirty);
+        }
+        for (int i = 0; i < mLockPatternRings.length; i++) {
+            for (int j = 0; j < mLockPatternRings[i].length; j++) {
+                final LockPatternRing ring = mLockPatternRings[i][j];
+                if (ring == null) {
+                    continue;
+                }
+                if (ring.onAnimationFrame(frameTime)) {
+                    unionRingBounds(dirty, i, j);
+                }
+                if (ring.isAnimating()) {
+                    animating = true;
+                }
+            }
+        }
+        mFrameDirty = null;
+        return animating;
+    }
+
+    private void unionRingBounds(Rect dirty, int row, int column) {
+        final float centerX = mLockPatternView.getCenterXForColumn(column);
+        final float centerY = mLockPatternView.getCenterYForRow(row);
+        final int radius = getRing(row, column).getBoundRadius();
+        dirty.union((int) (centerX - radius), (int) (centerY - radius),
+                (int) (centerX + radius + 1), (int) (centerY + radius + 1));
+    }
+
+    private void resetErrorRing(Cell cell) {
+        getRing(cell.row, cell.column).resetRing();
+        if (mFrameDirty != null) {
+            unionRingBounds(mFrameDirty, cell.row, cell.column);
+        }
     }
 
     public void resetLine() {
@@ -51,9 +148,11 @@ public class LockPatternHelper {
     }
 
     public void resetLockPatternRings() {
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                mLockPatternRings[i][j].resetRing();
+        for (int i = 0; i < mLockPatternRings.length; i++) {
+            for (int j = 0; j < mLockPatternRings[i].length; j++) {
+                if (mLockPatternRings[i][j] != null) {
+                    mLockPatternRings[i][j].resetRing();
+                }
             }
         }
     }
@@ -67,11 +166,40 @@ public class LockPatternHelper {
         mLockPatternLine.drawLine(canvas, path);
     }
 
+    /**
+     * Draws the in progress section of the line, from the last cell to (x, y).
+     */
+    public void drawTip(Canvas canvas, float fromX, float fromY, float x, float y) {
+        mLockPatternLine.drawTip(canvas, fromX, fromY, x, y);
+    }
+
+    /**
+     * @return whether a ring is in its hit animation.
+     */
+    public boolean isRingAnimating() {
+        for (int i = 0; i < mLockPatternRings.length; i++) {
+            for (int j = 0; j < mLockPatternRings[i].length; j++) {
+                final LockPatternRing ring = mLockPatternRings[i][j];
+                if (ring != null && ring.isAnimating()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a ring or the error line is animating.
+     */
+    public boolean isAnimating() {
+        return mLockPatternLine.isAnimating() || isRingAnimating();
+    }
+
     private void doLockPatternRingsError(boolean[][] patternDrawLookup) {
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
+        for (int i = 0; i < mLockPatternRings.length; i++) {
+            for (int j = 0; j < mLockPatternRings[i].length; j++) {
                 if (patternDrawLookup[i][j]) {
-                    mLockPatternRings[i][j].doError();
+                    obtainRing(i, j).doError();
                 }
             }
         }
@@ -107,26 +235,21 @@ public class LockPatternHelper {
         isLineError = true;
     }
 
-    public void doError(ArrayList<LockPatternView.Cell> pattern, boolean[][] patternDrawLookup) {
+    public void doError(List<Cell> pattern, boolean[][] patternDrawLookup) {
         doLockPatternRingsError(patternDrawLookup);
         getPaths(pattern, patternDrawLookup);
 
-        LockPatternView.Cell cell = mErrorCells.get(0);
+        Cell cell = mErrorCells.get(0);
         if (cell != null) {
-            mLockPatternRings[cell.row][cell.column].resetRing();
+            getRing(cell.row, cell.column).resetRing();
         }
 
         doNewLineError(new LockPatternLine.LineAnimListener() {
             @Override
             public void onErrorLineAnim(float x, float y, int times) {
-                try {
-
-                    LockPatternView.Cell cell = mErrorCells.get(times);
-                    if (cell != null) {
-                        mLockPatternRings[cell.row][cell.column].resetRing();
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
+                // the line ends at the cell after the last retracted segment
+                if (times < mErrorCells.size()) {
+                    resetErrorRing(mErrorCells.get(times));
                 }
             }
         });
@@ -134,39 +257,12 @@ public class LockPatternHelper {
 
     private void doNewLineError(LockPatternLine.LineAnimListener listener) {
         mLockMovePoints.remove(mLockMovePoints.size() - 1);
-        mLockPatternLine.doNewError(mLockMovePoints, listener);
+        mLockPatternLine.doNewError(mLockMovePoints, listener, AnimationUtils.currentAnimationTimeMillis());
+        mLockPatternAnimator.start();
     }
 
-    public void getPaths(ArrayList<LockPatternView.Cell> mPattern, boolean[][] mPatternDrawLookup) {
-
-        ArrayList<LockPatternView.Cell> pattern = mPattern;
-        final int count = pattern.size();
-        mLockMovePoints.clear();
-        mErrorCells.clear();
-        for (int i = 0; i < count; i++) {
-
-            LockPatternView.Cell cell = pattern.get(i);
-            // only draw the part of the pattern stored in
-            // the lookup table (this is only different in the case
-            // of animation).
-            if (!mPatternDrawLookup[cell.row][cell.column]) {
-                break;
-            }
-            mErrorCells.add(cell);
-            mLockMovePoints.add(new LockMovePoint());
-            float centerX = mLockPatternView.getCenterXForColumn(cell.column);
-            float centerY = mLockPatternView.getCenterYForRow(cell.row);
-
-            if (i == 0) {
-                mLockMovePoints.get(i).setCurX(centerX);
-                mLockMovePoints.get(i).setCurY(centerY);
-            } else {
-                mLockMovePoints.get(i).setCurX(centerX);
-                mLockMovePoints.get(i).setCurY(centerY);
-                mLockMovePoints.get(i - 1).setMoveX(centerX);
-                mLockMovePoints.get(i - 1).setMoveY(centerY);
-            }
-        }
+    public void getPaths(List<Cell> pattern, boolean[][] patternDrawLookup) {
+        mLockPatternView.getEngine().buildMovePoints(pattern, patternDrawLookup, mLockMovePoints, mErrorCells);
         mErrorCellSize = mErrorCells.size();
     }
 
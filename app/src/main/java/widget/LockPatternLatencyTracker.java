@@ -0,0 +1,121 @@
+package widget;
+
+/**
+ * Input to feedback latency of every cell added to the pattern of a
+ * {@link LockPatternView}, see {@link LockPatternView#setLatencyTrackingEnabled}.
+ * <p/>
+ * For each cell it timestamps the stages of the path from the touch sample to
+ * the screen: the time of the sample ({@link android.view.MotionEvent#getEventTime()}),
+ * the hit test adding the cell, the ring animation starting, the listener
+ * returning and the end of the next {@code onDraw}. The intervals go into
+ * fixed-bucket histograms in µs, so percentiles can be compared between
+ * devices and builds.
+ * <p/>
+ * Event times are {@link android.os.SystemClock#uptimeMillis()}, which counts
+ * on the same monotonic clock as {@link System#nanoTime()}, but in whole ms:
+ * intervals starting at the sample are up to 1 ms short. Not thread safe, use
+ * on the main thread.
+ */
+public class LockPatternLatencyTracker {
+
+    private static final int MAX_PENDING = Cell.MAX_GRID_SIZE * Cell.MAX_GRID_SIZE;
+
+    private final Histogram mInputToHit = newLatencyHistogram();
+    private final Histogram mHitToAnimation = newLatencyHistogram();
+    private final Histogram mHitToListener = newLatencyHistogram();
+    private final Histogram mInputToDraw = newLatencyHistogram();
+
+    private long mEventNanos;
+    private long mHitNanos;
+    // sample times of the cells added since the last draw
+    private final long[] mPendingEventNanos = new long[MAX_PENDING];
+    private int mPendingCount;
+
+    /**
+     * @return buckets of 1, 1.5, 2, 3, 5 and 7 times every power of ten, from
+     * 10 µs to 1 s.
+     */
+    private static Histogram newLatencyHistogram() {
+        final int[] steps = {10, 15, 20, 30, 50, 70};
+        final long[] bounds = new long[steps.length * 5 + 1];
+        long decade = 1;
+        for (int i = 0; i < bounds.length - 1; i++) {
+            bounds[i] = steps[i % steps.length] * decade;
+            if (i % steps.length == steps.length - 1) {
+                decade *= 10;
+            }
+        }
+        bounds[bounds.length - 1] = 1000000;
+        return new Histogram(bounds);
+    }
+
+    /**
+     * @return µs from the touch sample to the cell being added.
+     */
+    public Histogram getInputToHit() {
+        return mInputToHit;
+    }
+
+    /**
+     * @return µs from the cell being added to its ring animation starting.
+     */
+    public Histogram getHitToAnimation() {
+        return mHitToAnimation;
+    }
+
+    /**
+     * @return µs from the cell being added to the pattern listener returning.
+     */
+    public Histogram getHitToListener() {
+        return mHitToListener;
+    }
+
+    /**
+     * @return µs from the touch sample to the end of the first draw showing the cell.
+     */
+    public Histogram getInputToDraw() {
+        return mInputToDraw;
+    }
+
+    void onCellHit(long eventTimeMillis) {
+        mHitNanos = System.nanoTime();
+        mEventNanos = eventTimeMillis * 1000000;
+        mInputToHit.record((mHitNanos - mEventNanos) / 1000);
+        if (mPendingCount < MAX_PENDING) {
+            mPendingEventNanos[mPendingCount++] = mEventNanos;
+        }
+    }
+
+    void onAnimationStarted() {
+        mHitToAnimation.record((System.nanoTime() - mHitNanos) / 1000);
+    }
+
+    void onListenerNotified() {
+        mHitToListener.record((System.nanoTime() - mHitNanos) / 1000);
+    }
+
+    void onDrawn() {
+        if (mPendingCount == 0) {
+            return;
+        }
+        final long now = System.nanoTime();
+        for (int i = 0; i < mPendingCount; i++) {
+            mInputToDraw.record((now - mPendingEventNanos[i]) / 1000);
+        }
+        mPendingCount = 0;
+    }
+
+    public void reset() {
+        mInputToHit.reset();
+        mHitToAnimation.reset();
+        mHitToListener.reset();
+        mInputToDraw.reset();
+        mPendingCount = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "input->hit us: " + mInputToHit + "; hit->animation us: " + mHitToAnimation
+                + "; hit->listener us: " + mHitToListener + "; input->draw us: " + mInputToDraw;
+    }
+}
@@ -1,66 +1,73 @@
 package widget;
 
-import android.animation.*;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.view.View;
-import android.view.animation.LinearInterpolator;
+import android.graphics.Rect;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Created by dupengtao on 14-9-3.
  */
-public class LockPatternLine implements
-        ValueAnimator.AnimatorUpdateListener {
+public class LockPatternLine {
 
-    private static final String LINE_ALPHA = "lineAlpha";
-    private static final String LINE_COLOR = "lineColor";
-    private static final String LINE_DISAPPEAR = "lineDisappear";
     private static final int COLOR_NORMAL = 0x80FFFFFF;
     private static final int COLOR_WRONG = 0x80FF0000;
     private static final int strokeWidth = 5;
-    private final View mView;
-    private final Path mPath2;
+    private static final long NOT_STARTED = -1;
     private final Paint mPaint, mPaint2;
     private int lineColor = 0x80FFFFFF;
     private int mMoveTimes;
-    private float lineAlpha = 0.4f, lineDisappear = 1.0f;
-    private float factorY = 0f, factorX = 0f;
-    private AnimatorSet mLineErrorAnimator;
-    private LockMovePoint mCurPoint = null;
+    private long mErrorStartTime = NOT_STARTED;
     private List<LockMovePoint> mMovePoints;
-
-
-    public LockPatternLine(View view, int lineColor) {
+    private LineAnimListener mListener;
+    private float mErrorLeft, mErrorTop, mErrorRight, mErrorBottom;
+
+    /**
+     * Retract timeline of the error line, built once in {@link #doNewError}:
+     * the segments as {@link Canvas#drawLines} input, 4 floats each, and the
+     * time into the animation at which each segment is fully retracted.
+     */
+    private float[] mErrorLines = new float[0];
+    private float[] mSegmentEndTimes = new float[0];
+    private int mSegmentCount;
+    private long mErrorDuration;
+    /**
+     * The segment being retracted and where its visible part starts.
+     */
+    private int mSegment = -1;
+    private float mSegmentX, mSegmentY;
+
+
+    public LockPatternLine(int lineColor) {
         this.lineColor = lineColor;
-        mView = view;
         mPaint = getPaint();
         mPaint.setColor(lineColor);
         mPaint2 = getPaint2();
-        mPath2 = new Path();
     }
 
-    public LockPatternLine(View view) {
-        mView = view;
+    public LockPatternLine() {
         mPaint = getPaint();
         mPaint.setColor(lineColor);
         mPaint2 = getPaint2();
-        mPath2 = new Path();
     }
 
     public void resetLine() {
-        cancelLineAnim();
+        mErrorStartTime = NOT_STARTED;
+        mSegment = -1;
         setLineColor(lineColor);
     }
 
     public void drawLine(Canvas canvas, Path path) {
-        cancelLineAnim();
         canvas.drawPath(path, mPaint);
     }
 
+    public void drawTip(Canvas canvas, float fromX, float fromY, float x, float y) {
+        canvas.drawLine(fromX, fromY, x, y, mPaint);
+    }
+
     private Paint getPaint() {
         Paint p = new Paint();
         p.setAntiAlias(true);
@@ -72,50 +79,6 @@ public class LockPatternLine implements
         return p;
     }
 
-    public void doError() {
-        cancelLineAnim();
-        ObjectAnimator lineColorAnim = getLineColorAnim();
-        AnimatorSet animatorSet = new AnimatorSet();
-        animatorSet.play(lineColorAnim);
-        animatorSet.start();
-        mLineErrorAnimator = animatorSet;
-    }
-
-    private ObjectAnimator getLineDisappearAnim(Path path) {
-        PropertyValuesHolder pvColor = PropertyValuesHolder.ofFloat(LINE_DISAPPEAR,
-                1f, 0f);
-        ObjectAnimator colorAnim = ObjectAnimator.ofPropertyValuesHolder(
-                this, pvColor).setDuration(175);
-        colorAnim.setInterpolator(new LinearInterpolator());
-        colorAnim.addUpdateListener(this);
-        colorAnim.setAutoCancel(true);
-        return colorAnim;
-    }
-
-
-    private void cancelLineAnim() {
-        if (mLineErrorAnimator != null && mLineErrorAnimator.isRunning()) {
-            mLineErrorAnimator.end();
-        }
-    }
-
-    public void endAnime() {
-        mLineErrorAnimator.end();
-    }
-
-
-    private ObjectAnimator getLineColorAnim() {
-        PropertyValuesHolder pvColor = PropertyValuesHolder.ofInt(LINE_COLOR,
-                lineColor, COLOR_WRONG);
-        ObjectAnimator colorAnim = ObjectAnimator.ofPropertyValuesHolder(
-                this, pvColor).setDuration(175);
-        colorAnim.setInterpolator(new LinearInterpolator());
-        colorAnim.addUpdateListener(this);
-        colorAnim.setAutoCancel(true);
-        return colorAnim;
-    }
-
-
     public int getLineColor() {
         return mPaint.getColor();
     }
@@ -124,34 +87,121 @@ public class LockPatternLine implements
         mPaint.setColor(lineColor);
     }
 
-    public float getLineAlpha() {
-        return lineAlpha;
-    }
-
-    public void setLineAlpha(float lineAlpha) {
-        this.lineAlpha = lineAlpha;
-    }
-
-    public float getLineDisappear() {
-        return lineDisappear;
+    /**
+     * Starts retracting the error line along {@code points} at a constant
+     * speed, in {@link LockPatternHelper#DISAPPEAR_TIME} ms per segment in
+     * total. The retraction is advanced by {@link #onAnimationFrame(long)}.
+     */
+    public void doNewError(List<LockMovePoint> points, LineAnimListener listener, long frameTime) {
+        if (points.size() == 0) {
+            return;
+        }
+        mMovePoints = points;
+        mListener = listener;
+        mMoveTimes = 0;
+        mErrorStartTime = frameTime;
+        mPaint.setAlpha(0);
+        buildTimeline(points);
+
+        // the retracting line only ever shrinks, so the bounds of the whole
+        // error line cover every frame of the animation
+        LockMovePoint first = points.get(0);
+        mErrorLeft = mErrorRight = first.getCurX();
+        mErrorTop = mErrorBottom = first.getCurY();
+        for (int i = 0, count = points.size(); i < count; i++) {
+            LockMovePoint p = points.get(i);
+            mErrorLeft = Math.min(mErrorLeft, Math.min(p.getCurX(), p.getMoveX()));
+            mErrorRight = Math.max(mErrorRight, Math.max(p.getCurX(), p.getMoveX()));
+            mErrorTop = Math.min(mErrorTop, Math.min(p.getCurY(), p.getMoveY()));
+            mErrorBottom = Math.max(mErrorBottom, Math.max(p.getCurY(), p.getMoveY()));
+        }
     }
 
-    public void setLineDisappear(float lineDisappear) {
-        this.lineDisappear = lineDisappear;
-    }
+    private void buildTimeline(List<LockMovePoint> points) {
+        final int count = points.size();
+        if (mSegmentEndTimes.length < count) {
+            mErrorLines = new float[4 * count];
+            mSegmentEndTimes = new float[count];
+        }
+        float length = 0f;
+        for (int i = 0; i < count; i++) {
+            final LockMovePoint p = points.get(i);
+            mErrorLines[4 * i] = p.getCurX();
+            mErrorLines[4 * i + 1] = p.getCurY();
+            mErrorLines[4 * i + 2] = p.getMoveX();
+            mErrorLines[4 * i + 3] = p.getMoveY();
+            length += (float) Math.hypot(p.getMoveX() - p.getCurX(), p.getMoveY() - p.getCurY());
+            mSegmentEndTimes[i] = length;
+        }
+        mSegmentCount = count;
+        mErrorDuration = (long) LockPatternHelper.DISAPPEAR_TIME * count;
+        // lengths to times; without any length every segment gets the same time
+        for (int i = 0; i < count; i++) {
+            mSegmentEndTimes[i] = length > 0f
+                    ? mSegmentEndTimes[i] / length * mErrorDuration
+                    : (float) mErrorDuration * (i + 1) / count;
+        }
+        mSegmentEndTimes[count - 1] = mErrorDuration;
+        mSegment = 0;
+        mSegmentX = mErrorLines[0];
+        mSegmentY = mErrorLines[1];
+    }
+
+    public boolean isAnimating() {
+        return mErrorStartTime != NOT_STARTED;
+    }
+
+    /**
+     * Adds the area covered by the error line to {@code dirty}.
+     */
+    public void unionErrorBounds(Rect dirty) {
+        final float pad = mPaint2.getStrokeWidth();
+        dirty.union((int) (mErrorLeft - pad), (int) (mErrorTop - pad),
+                (int) (mErrorRight + pad + 1), (int) (mErrorBottom + pad + 1));
+    }
+
+    /**
+     * Advances the error retraction to {@code frameTime}: finds the segment
+     * being retracted by a binary search of the timeline, so a frame costs
+     * the same however long the pattern is.
+     *
+     * @return whether the line is still animating.
+     */
+    public boolean onAnimationFrame(long frameTime) {
+        if (mErrorStartTime == NOT_STARTED) {
+            return false;
+        }
+        final int count = mSegmentCount;
+        final float elapsed = Math.min(Math.max(0, frameTime - mErrorStartTime), mErrorDuration);
+        int moveTimes = Arrays.binarySearch(mSegmentEndTimes, 0, count, elapsed);
+        // segments ending at or before elapsed are retracted
+        moveTimes = moveTimes >= 0 ? moveTimes + 1 : -moveTimes - 1;
+        while (moveTimes < count && mSegmentEndTimes[moveTimes] <= elapsed) {
+            moveTimes++;
+        }
 
-    @Override
-    public void onAnimationUpdate(ValueAnimator animation) {
-        mView.invalidate();
-    }
+        // report every segment that was fully retracted since the last frame
+        while (mMoveTimes < moveTimes) {
+            LockMovePoint point = mMovePoints.get(mMoveTimes);
+            mMoveTimes++;
+            if (mListener != null) {
+                mListener.onErrorLineAnim(point.getMoveX(), point.getMoveY(), mMoveTimes);
+            }
+        }
 
-    public void doNewError(ArrayList<LockMovePoint> mLockMovePoints, LineAnimListener listener) {
-        if (mLockMovePoints.size() == 0) {
-            return;
+        if (moveTimes == count) {
+            mErrorStartTime = NOT_STARTED;
+            mSegment = -1;
+            return false;
         }
-        ObjectAnimator moveAnim = getMoveAnim(mLockMovePoints, listener);
-        moveAnim.start();
-        mPaint.setAlpha(0);
+        final float start = moveTimes == 0 ? 0f : mSegmentEndTimes[moveTimes - 1];
+        final float end = mSegmentEndTimes[moveTimes];
+        final float fraction = end > start ? (elapsed - start) / (end - start) : 1f;
+        final int line = 4 * moveTimes;
+        mSegment = moveTimes;
+        mSegmentX = mErrorLines[line] + (mErrorLines[line + 2] - mErrorLines[line]) * fraction;
+        mSegmentY = mErrorLines[line + 1] + (mErrorLines[line + 3] - mErrorLines[line + 1]) * fraction;
+        return true;
     }
 
     private Paint getPaint2() {
@@ -166,92 +216,19 @@ public class LockPatternLine implements
         return p;
     }
 
+    /**
+     * Draws what is left of the error line: the rest of the segment being
+     * retracted and the segments after it, straight from the timeline.
+     */
     public void doLineErrorDraw(Canvas canvas) {
-
-        if (mCurPoint != null) {
-            mPath2.rewind();
-            setError(mMovePoints, mMoveTimes + 1);
-            float curX = mCurPoint.getCurX();
-            float curY = mCurPoint.getCurY();
-            float moveX = mCurPoint.getMoveX();
-            float moveY = mCurPoint.getMoveY();
-            mPath2.moveTo(curX == moveX ? moveX : curX + ((moveX - curX) * factorX), curY == moveY ? moveY : curY + ((moveY - curY) * factorY));
-            mPath2.lineTo(moveX, moveY);
-            canvas.drawPath(mPath2, mPaint2);
-        } else {
-            canvas.drawPath(mPath2, mPaint2);
+        if (mSegment < 0) {
+            return;
         }
-    }
-
-    public ObjectAnimator getMoveAnim(List<LockMovePoint> points, final LineAnimListener listener) {
-        mMovePoints = points;
-        mMoveTimes = 0;
-        PropertyValuesHolder pvMoveY = PropertyValuesHolder.ofFloat("factorY",
-                0f, 1f);
-        PropertyValuesHolder pvMoveX = PropertyValuesHolder.ofFloat("factorX",
-                0f, 1f);
-        ObjectAnimator moveAnim = ObjectAnimator.ofPropertyValuesHolder(
-                this, pvMoveY, pvMoveX).setDuration(LockPatternHelper.DISAPPEAR_TIME);
-        moveAnim.setRepeatMode(ValueAnimator.RESTART);
-        moveAnim.setRepeatCount(points.size() - 1);
-        moveAnim.addUpdateListener(this);
-        moveAnim.setAutoCancel(true);
-        moveAnim.addListener(new Animator.AnimatorListener() {
-            @Override
-            public void onAnimationStart(Animator animation) {
-                mCurPoint = mMovePoints.get(mMoveTimes);
-            }
-
-            @Override
-            public void onAnimationEnd(Animator animation) {
-            }
-
-            @Override
-            public void onAnimationCancel(Animator animation) {
-            }
-
-            @Override
-            public void onAnimationRepeat(Animator animation) {
-                mMoveTimes++;
-                if (listener != null) {
-                    listener.onErrorLineAnim(mCurPoint.getMoveX(), mCurPoint.getMoveY(), mMoveTimes);
-                }
-                try {
-                    if (mMovePoints.size() != 0) {
-                        mCurPoint = mMovePoints.get(mMoveTimes);
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-        });
-        return moveAnim;
-    }
-
-    public float getFactorY() {
-        return factorY;
-    }
-
-    public void setFactorY(float factorY) {
-        this.factorY = factorY;
-    }
-
-    public float getFactorX() {
-        return factorX;
-    }
-
-    public void setFactorX(float factorX) {
-        this.factorX = factorX;
-    }
-
-    public void setError(List<LockMovePoint> points, int num) {
-        //MovePoint point = points.get(0);
-        //mPath.moveTo(point.getCurX(),point.getCurY());
-        //mPath.lineTo(point.getMoveX(),point.getMoveY());
-        for (int i = num, j = points.size(); i < j; i++) {
-            LockMovePoint p = points.get(i);
-            mPath2.moveTo(p.getCurX(), p.getCurY());
-            mPath2.lineTo(p.getMoveX(), p.getMoveY());
+        final int line = 4 * mSegment;
+        canvas.drawLine(mSegmentX, mSegmentY, mErrorLines[line + 2], mErrorLines[line + 3], mPaint2);
+        final int rest = 4 * (mSegmentCount - mSegment - 1);
+        if (rest > 0) {
+            canvas.drawLines(mErrorLines, line + 4, rest, mPaint2);
         }
     }
 
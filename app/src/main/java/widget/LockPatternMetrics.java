@@ -0,0 +1,205 @@
+package widget;
+
+/**
+ * Render performance of a {@link LockPatternView}, collected while
+ * {@link LockPatternView#setMetricsEnabled metrics are enabled}: how long
+ * {@code onDraw} takes, how many rings each frame draws, how much of the view
+ * each frame redraws, how many animation frames missed the frame budget and
+ * how many redraws {@link LockPatternView.InvalidationPolicy#Adaptive} saved.
+ * <p/>
+ * Recording does not allocate. Read the values on the main thread, or copy
+ * them with {@link #snapshot()} / {@link #copyTo(LockPatternMetrics)}.
+ */
+public class LockPatternMetrics {
+
+    /**
+     * Told about every animation frame that missed the frame budget, on the
+     * main thread, right after the frame.
+     */
+    public interface OnJankListener {
+
+        /**
+         * @param metrics     The metrics of the view, including this frame.
+         * @param frameMillis How late the animation update finished, from the
+         *                    start of the frame, in ms.
+         */
+        void onJankFrame(LockPatternMetrics metrics, float frameMillis);
+    }
+
+    /**
+     * Budget of one frame at 60 fps.
+     */
+    public static final long DEFAULT_FRAME_BUDGET_NANOS = 16666667;
+
+    private final Histogram mDrawMicros;
+    private final Histogram mRingsDrawn;
+    private final Histogram mInvalidatedArea;
+    private final Histogram mAnimationMicros;
+    private long mAnimationFrames;
+    private long mJankFrames;
+    private long mCoalescedMoves;
+    private long mDeferredMoves;
+    private long mFrameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
+    private OnJankListener mOnJankListener;
+
+    public LockPatternMetrics() {
+        this(Histogram.exponential(125, 10), // 125 us .. 64 ms
+                new Histogram(0, 1, 2, 3, 4, 6, 9, 16, 25, 36, 49, 64, 81, 100),
+                Histogram.exponential(1024, 12), // 1k .. 2M px
+                Histogram.exponential(125, 10));
+    }
+
+    private LockPatternMetrics(Histogram drawMicros, Histogram ringsDrawn,
+                               Histogram invalidatedArea, Histogram animationMicros) {
+        mDrawMicros = drawMicros;
+        mRingsDrawn = ringsDrawn;
+        mInvalidatedArea = invalidatedArea;
+        mAnimationMicros = animationMicros;
+    }
+
+    /**
+     * @param budgetNanos Animation updates that finish later than this after
+     *                    the start of their frame count as jank.
+     */
+    public void setFrameBudgetNanos(long budgetNanos) {
+        mFrameBudgetNanos = budgetNanos;
+    }
+
+    public long getFrameBudgetNanos() {
+        return mFrameBudgetNanos;
+    }
+
+    public void setOnJankListener(OnJankListener listener) {
+        mOnJankListener = listener;
+    }
+
+    /**
+     * @return the time {@code onDraw} took, in µs.
+     */
+    public Histogram getDrawMicros() {
+        return mDrawMicros;
+    }
+
+    /**
+     * @return the rings drawn per frame; the others were outside the clip.
+     */
+    public Histogram getRingsDrawn() {
+        return mRingsDrawn;
+    }
+
+    /**
+     * @return the area invalidated per frame, in pixels.
+     */
+    public Histogram getInvalidatedArea() {
+        return mInvalidatedArea;
+    }
+
+    /**
+     * @return the time the animation update of a frame took, in µs.
+     */
+    public Histogram getAnimationMicros() {
+        return mAnimationMicros;
+    }
+
+    public long getAnimationFrames() {
+        return mAnimationFrames;
+    }
+
+    /**
+     * @return the animation frames that missed the frame budget.
+     */
+    public long getJankFrames() {
+        return mJankFrames;
+    }
+
+    /**
+     * @return moves that did not redraw the view because the tip moved by less
+     * than a pixel; each would have asked for a frame.
+     */
+    public long getCoalescedMoves() {
+        return mCoalescedMoves;
+    }
+
+    /**
+     * @return moves that did not invalidate the view because a frame was
+     * already pending, and that frame drew them.
+     */
+    public long getDeferredMoves() {
+        return mDeferredMoves;
+    }
+
+    void recordCoalescedMove() {
+        mCoalescedMoves++;
+    }
+
+    void recordDeferredMove() {
+        mDeferredMoves++;
+    }
+
+    void recordDraw(long drawNanos, int ringsDrawn, long invalidatedArea) {
+        mDrawMicros.record(drawNanos / 1000);
+        mRingsDrawn.record(ringsDrawn);
+        mInvalidatedArea.record(invalidatedArea);
+    }
+
+    /**
+     * @param frameTimeNanos The start of the frame, {@link System#nanoTime()} base.
+     * @param startNanos     When the update started.
+     * @param endNanos       When the update finished.
+     */
+    void recordAnimationFrame(long frameTimeNanos, long startNanos, long endNanos) {
+        mAnimationFrames++;
+        mAnimationMicros.record((endNanos - startNanos) / 1000);
+        final long frameNanos = endNanos - frameTimeNanos;
+        if (frameNanos > mFrameBudgetNanos) {
+            mJankFrames++;
+            if (mOnJankListener != null) {
+                mOnJankListener.onJankFrame(this, frameNanos / 1000000f);
+            }
+        }
+    }
+
+    public void reset() {
+        mDrawMicros.reset();
+        mRingsDrawn.reset();
+        mInvalidatedArea.reset();
+        mAnimationMicros.reset();
+        mAnimationFrames = 0;
+        mJankFrames = 0;
+        mCoalescedMoves = 0;
+        mDeferredMoves = 0;
+    }
+
+    /**
+     * @return a copy of the values, without the listener.
+     */
+    public LockPatternMetrics snapshot() {
+        final LockPatternMetrics snapshot = new LockPatternMetrics(mDrawMicros.newEmpty(),
+                mRingsDrawn.newEmpty(), mInvalidatedArea.newEmpty(), mAnimationMicros.newEmpty());
+        copyTo(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Copies the values into {@code snapshot} without allocating.
+     */
+    public void copyTo(LockPatternMetrics snapshot) {
+        mDrawMicros.copyTo(snapshot.mDrawMicros);
+        mRingsDrawn.copyTo(snapshot.mRingsDrawn);
+        mInvalidatedArea.copyTo(snapshot.mInvalidatedArea);
+        mAnimationMicros.copyTo(snapshot.mAnimationMicros);
+        snapshot.mAnimationFrames = mAnimationFrames;
+        snapshot.mJankFrames = mJankFrames;
+        snapshot.mCoalescedMoves = mCoalescedMoves;
+        snapshot.mDeferredMoves = mDeferredMoves;
+        snapshot.mFrameBudgetNanos = mFrameBudgetNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "draw us: " + mDrawMicros + "; rings: " + mRingsDrawn
+                + "; invalidated px: " + mInvalidatedArea + "; animation us: " + mAnimationMicros
+                + "; jank frames: " + mJankFrames + "/" + mAnimationFrames
+                + "; coalesced moves: " + mCoalescedMoves + "; deferred moves: " + mDeferredMoves;
+    }
+}
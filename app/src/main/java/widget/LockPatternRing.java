@@ -1,73 +1,191 @@
 package widget;
 
-import android.animation.*;
+import android.animation.TimeInterpolator;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.view.View;
 import android.view.animation.AccelerateDecelerateInterpolator;
 import android.view.animation.DecelerateInterpolator;
-import android.view.animation.LinearInterpolator;
 
 /**
  * Created by dupengtao on 14-9-3.
+ * <p/>
+ * A ring has no animators of its own: its appearance is a pure function of the
+ * time it was hit and the frame time handed in by {@link LockPatternAnimator}.
  */
-public class LockPatternRing implements
-        ValueAnimator.AnimatorUpdateListener {
-
-    private static final String OUTER_RADIUS_CIRCLE_SCALE = "outerRadiusCircleScale";
-    private static final String OUTER_RADIUS_CIRCLE_ALPHA = "outerRadiusCircleAlpha";
-    private static final String INNER_RADIUS_CIRCLE_SCALE = "innerRadiusCircleScale";
-    private static final String INNER_RADIUS_CIRCLE_ALPHA = "innerRadiusCircleAlpha";
-    private static int COLOR_NORMAL = 0x80FFFFFF;
-    private static int COLOR_WRONG = 0x80FF0000;
-    private static int COLOR_INNER_COLOR = Color.WHITE;
-    private static int COLOR_RING_COLOR = 0x80FF0000;
-    private static final String INNER_COLOR = "innerColor";
-    private static final String RING_COLOR = "ringColor";
-    private final View mView;
-    private final int innerRadius, innerStrokeWidth, outerRadius;
-    private float innerRadiusCircleScale = 0.0f, innerRadiusCircleAlpha = 0.0f, strokeRedAlpha = 1f, outerRadiusCircleScale = 0.0f, outerRadiusCircleAlpha = 0.0f;
+public class LockPatternRing {
+
+    public static final int RING_ANIM_DURATION = 350;
+    private static final TimeInterpolator DECELERATE = new DecelerateInterpolator();
+    private static final TimeInterpolator ACCELERATE_DECELERATE = new AccelerateDecelerateInterpolator();
+    private static final int COLOR_NORMAL = 0x80FFFFFF;
+    private static final int COLOR_WRONG = 0x80FF0000;
+    private static final long NOT_HIT = -1;
+
+    /**
+     * Steps each half of the hit animation is cut into for {@link LockPatternRingAtlas}.
+     */
+    static final int SPRITE_STEPS = 12;
+    private static final int SPRITE_IDLE = 0;
+    private static final int SPRITE_IDLE_ERROR = 1;
+    private static final int SPRITE_SETTLED = 2;
+    private static final int SPRITE_ERROR = 3;
+    private static final int SPRITE_ANIMATION = 4;
+    /**
+     * Number of distinct looks of a ring: idle, settled, both in error colors,
+     * and the steps of the animation in between.
+     */
+    static final int SPRITE_COUNT = SPRITE_ANIMATION + 2 * SPRITE_STEPS;
+    private final Paint mInnerPaint, mStrokePaint, mOuterPaint;
+    private final int innerRadius, innerStrokeWidth, defaultOuterRadius;
+    private int outerRadius;
     private int innerColor = Color.WHITE;
     private int ringColor = COLOR_NORMAL;
     private int outerColor = Color.WHITE;
-    private AnimatorSet mRingAnim, mRingErrorAnim;
+    private long mDownTime = NOT_HIT;
+    private boolean mError;
+    private boolean mAnimating;
 
 
-    public LockPatternRing(Context context, View view, int innerCircleColor, int ringColor, int outerCircleColor) {
-        this(context, view);
+    public LockPatternRing(Context context, int innerCircleColor, int ringColor, int outerCircleColor) {
+        this(context);
         innerColor = innerCircleColor;
         this.ringColor = ringColor;
         outerColor = outerCircleColor;
-        COLOR_RING_COLOR = ringColor;
-        COLOR_INNER_COLOR = innerCircleColor;
     }
 
-    public LockPatternRing(Context context, View view) {
-        innerRadius = dip2px(context, 3f);
-        innerStrokeWidth = dip2px(context, 1);
-        outerRadius = dip2px(context, 22);
-        mView = view;
+    public LockPatternRing(Context context) {
+        this(dip2px(context, 3f), dip2px(context, 1), dip2px(context, 22));
+    }
+
+    /**
+     * A ring with the colors and size of {@code style}, in its idle state.
+     * It draws with the paints of {@code style}, so creating it allocates no
+     * native objects; rings are drawn one at a time on the main thread and
+     * every draw recolors the paints first.
+     */
+    public LockPatternRing(LockPatternRing style) {
+        innerRadius = style.innerRadius;
+        innerStrokeWidth = style.innerStrokeWidth;
+        defaultOuterRadius = style.defaultOuterRadius;
+        mInnerPaint = style.mInnerPaint;
+        mStrokePaint = style.mStrokePaint;
+        mOuterPaint = style.mOuterPaint;
+        outerRadius = style.outerRadius;
+        innerColor = style.innerColor;
+        ringColor = style.ringColor;
+        outerColor = style.outerColor;
+    }
+
+    /**
+     * Sizes in pixels.
+     */
+    LockPatternRing(int innerRadius, int innerStrokeWidth, int outerRadius) {
+        this.innerRadius = innerRadius;
+        this.innerStrokeWidth = innerStrokeWidth;
+        defaultOuterRadius = this.outerRadius = outerRadius;
+        // paints are created once here and only recolored in drawRing, so
+        // drawing a frame does not allocate
+        mInnerPaint = getPaint();
+        mStrokePaint = getPaint();
+        mStrokePaint.setStyle(Paint.Style.STROKE);
+        mStrokePaint.setStrokeWidth(innerStrokeWidth);
+        mOuterPaint = getPaint();
+    }
+
+    /**
+     * @param frameTime the current animation frame time, see {@link LockPatternAnimator#getFrameTime()}
+     */
+    public void drawRing(Canvas canvas, float cx, float cy, long frameTime) {
+        // an error freezes the ring in its settled state
+        final long elapsed = mDownTime == NOT_HIT ? NOT_HIT
+                : mError ? 2 * RING_ANIM_DURATION : Math.max(0, frameTime - mDownTime);
+        drawRing(canvas, cx, cy, elapsed, mError);
+    }
+
+    /**
+     * @return which of the {@link #SPRITE_COUNT} looks the ring has at
+     * {@code frameTime}, animation steps rounded down.
+     */
+    int getSprite(long frameTime) {
+        if (mDownTime == NOT_HIT) {
+            return mError ? SPRITE_IDLE_ERROR : SPRITE_IDLE;
+        }
+        if (mError) {
+            return SPRITE_ERROR;
+        }
+        final long elapsed = Math.max(0, frameTime - mDownTime);
+        if (elapsed >= 2 * RING_ANIM_DURATION) {
+            return SPRITE_SETTLED;
+        }
+        return SPRITE_ANIMATION + (int) (elapsed * SPRITE_STEPS / RING_ANIM_DURATION);
+    }
+
+    /**
+     * Draws look {@code sprite} of this ring's style, whatever its state.
+     */
+    void drawSprite(Canvas canvas, float cx, float cy, int sprite) {
+        switch (sprite) {
+            case SPRITE_IDLE:
+                drawRing(canvas, cx, cy, NOT_HIT, false);
+                break;
+            case SPRITE_IDLE_ERROR:
+                drawRing(canvas, cx, cy, NOT_HIT, true);
+                break;
+            case SPRITE_SETTLED:
+                drawRing(canvas, cx, cy, 2 * RING_ANIM_DURATION, false);
+                break;
+            case SPRITE_ERROR:
+                drawRing(canvas, cx, cy, 2 * RING_ANIM_DURATION, true);
+                break;
+            default:
+                drawRing(canvas, cx, cy,
+                        (long) (sprite - SPRITE_ANIMATION) * RING_ANIM_DURATION / SPRITE_STEPS, false);
+        }
     }
 
-    public void drawRing(Canvas canvas, float cx, float cy) {
+    /**
+     * @param elapsed ms since the ring was hit, or {@link #NOT_HIT}.
+     */
+    private void drawRing(Canvas canvas, float cx, float cy, long elapsed, boolean error) {
+        float innerRadiusCircleScale = 0f, innerRadiusCircleAlpha = 0f;
+        float outerRadiusCircleScale = 0f, outerRadiusCircleAlpha = 0f;
+
+        if (elapsed != NOT_HIT) {
+            if (elapsed < RING_ANIM_DURATION) {
+                // down: inner dot grows in, outer circle fades in
+                final float fraction = (float) elapsed / RING_ANIM_DURATION;
+                final float accelerateDecelerate = ACCELERATE_DECELERATE.getInterpolation(fraction);
+                innerRadiusCircleScale = accelerateDecelerate;
+                innerRadiusCircleAlpha = 0.2f + 0.2f * accelerateDecelerate;
+                outerRadiusCircleScale = 0.5f + 0.5f * DECELERATE.getInterpolation(fraction);
+                outerRadiusCircleAlpha = 0.2f * accelerateDecelerate;
+            } else {
+                innerRadiusCircleScale = 1f;
+                innerRadiusCircleAlpha = 0.4f;
+                outerRadiusCircleScale = 1f;
+                if (elapsed < 2 * RING_ANIM_DURATION) {
+                    // up: outer circle fades out again
+                    final float fraction = (float) (elapsed - RING_ANIM_DURATION) / RING_ANIM_DURATION;
+                    outerRadiusCircleAlpha = 0.2f * (1f - ACCELERATE_DECELERATE.getInterpolation(fraction));
+                }
+            }
+        }
 
         //innerCircle
-        Paint p1 = getPaint();
-        p1.setColor(innerColor);
+        Paint p1 = mInnerPaint;
+        p1.setColor(error ? COLOR_WRONG : innerColor);
         p1.setAlpha((int) (255 * innerRadiusCircleAlpha));
         canvas.drawCircle(cx, cy, innerRadius * innerRadiusCircleScale, p1);
 
         //CircleStroke
-        Paint p2 = getPaint();
-        p2.setColor(ringColor);
-        p2.setStyle(Paint.Style.STROKE);
-        p2.setStrokeWidth(innerStrokeWidth);
+        Paint p2 = mStrokePaint;
+        p2.setColor(error ? COLOR_WRONG : ringColor);
         canvas.drawCircle(cx, cy, innerRadius + innerStrokeWidth / 2, p2);
 
         //outerRing
-        Paint p3 = getPaint();
+        Paint p3 = mOuterPaint;
         p3.setColor(outerColor);
         p3.setAlpha((int) (255 * outerRadiusCircleAlpha));
         canvas.drawCircle(cx, cy, outerRadius * outerRadiusCircleScale, p3);
@@ -85,215 +203,61 @@ public class LockPatternRing implements
         return (int) (dpValue * scale + 0.5f);
     }
 
-    private ObjectAnimator getInterDownSizeAnim() {
-        PropertyValuesHolder pvSize = PropertyValuesHolder.ofFloat(INNER_RADIUS_CIRCLE_SCALE,
-                0f, 1f);
-        ObjectAnimator sizeAnim = ObjectAnimator.ofPropertyValuesHolder(
-                this, pvSize).setDuration(350);
-        sizeAnim.addUpdateListener(this);
-        sizeAnim.setAutoCancel(true);
-        return sizeAnim;
+    /**
+     * Starts the hit animation at {@code frameTime}.
+     */
+    public void downAnim(long frameTime) {
+        mDownTime = frameTime;
+        mError = false;
+        mAnimating = true;
     }
 
-    private ObjectAnimator getOuterDownSizeAnim() {
-        PropertyValuesHolder pvSize = PropertyValuesHolder.ofFloat(OUTER_RADIUS_CIRCLE_SCALE,
-                0.5f, 1f);
-        ObjectAnimator sizeAnim = ObjectAnimator.ofPropertyValuesHolder(
-                this, pvSize).setDuration(350);
-        sizeAnim.setInterpolator(new DecelerateInterpolator());
-        sizeAnim.addUpdateListener(this);
-        sizeAnim.setAutoCancel(true);
-        return sizeAnim;
+    /**
+     * Called once per frame by {@link LockPatternHelper#onAnimationFrame}.
+     *
+     * @return whether the ring has to be redrawn for {@code frameTime}, which
+     * includes the frame that settles the animation.
+     */
+    public boolean onAnimationFrame(long frameTime) {
+        final boolean wasAnimating = mAnimating;
+        mAnimating = mDownTime != NOT_HIT && !mError && frameTime - mDownTime < 2 * RING_ANIM_DURATION;
+        return wasAnimating || mAnimating;
     }
 
-    private ObjectAnimator getInnerDownPaintAlphaAnim() {
-        PropertyValuesHolder pvAlpha = PropertyValuesHolder.ofFloat(INNER_RADIUS_CIRCLE_ALPHA,
-                0.2f, 0.4f);
-        ObjectAnimator alphaAnim = ObjectAnimator.ofPropertyValuesHolder(
-                this, pvAlpha).setDuration(350);
-        alphaAnim.addUpdateListener(this);
-        alphaAnim.setAutoCancel(true);
-        return alphaAnim;
+    public boolean isAnimating() {
+        return mAnimating;
     }
 
-
-    private ObjectAnimator getOuterDownPaintAlphaAnim() {
-        PropertyValuesHolder pvAlpha = PropertyValuesHolder.ofFloat(OUTER_RADIUS_CIRCLE_ALPHA,
-                0f, 0.2f);
-        ObjectAnimator alphaAnim = ObjectAnimator.ofPropertyValuesHolder(
-                this, pvAlpha).setDuration(350);
-        //alphaAnim.setStartDelay(225);
-        alphaAnim.setInterpolator(new AccelerateDecelerateInterpolator());
-        alphaAnim.addUpdateListener(this);
-        alphaAnim.setAutoCancel(true);
-        return alphaAnim;
+    /**
+     * @return whether the ring looks like a ring that was never hit.
+     */
+    public boolean isIdle() {
+        return mDownTime == NOT_HIT && !mError;
     }
 
-    private ObjectAnimator getOuterUpPaintAlphaAnim() {
-        PropertyValuesHolder pvAlpha = PropertyValuesHolder.ofFloat(OUTER_RADIUS_CIRCLE_ALPHA,
-                0.2f, 0f);
-        ObjectAnimator alphaAnim = ObjectAnimator.ofPropertyValuesHolder(
-                this, pvAlpha).setDuration(350);
-        alphaAnim.setInterpolator(new AccelerateDecelerateInterpolator());
-        alphaAnim.addUpdateListener(this);
-        alphaAnim.setAutoCancel(true);
-        return alphaAnim;
+    /**
+     * Keeps the outer circle inside a cell of {@code cellSize} pixels so the
+     * rings of large grids do not overlap.
+     */
+    public void setCellSize(float cellSize) {
+        outerRadius = Math.min(defaultOuterRadius, (int) (cellSize / 2));
     }
 
-    public void downAnim() {
-        cancelAnim();
-        ObjectAnimator outerDownSizeAnim = getOuterDownSizeAnim();
-        ObjectAnimator interDownSizeAnim = getInterDownSizeAnim();
-        ObjectAnimator paintOuterAlphaAnim = getOuterDownPaintAlphaAnim();
-        ObjectAnimator paintInnerAlphaAnim = getInnerDownPaintAlphaAnim();
-        AnimatorSet animatorSet = new AnimatorSet();
-        animatorSet.play(outerDownSizeAnim).with(interDownSizeAnim).with(paintOuterAlphaAnim).with(paintInnerAlphaAnim);
-        animatorSet.start();
-        animatorSet.addListener(new EmptyAnimatorListener() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                getOuterUpPaintAlphaAnim().start();
-            }
-
-        });
-        mRingAnim = animatorSet;
-    }
-
-    private void cancelAnim() {
-        if (mRingAnim != null && mRingAnim.isRunning()) {
-            mRingAnim.end();
-        }
-        if (mRingErrorAnim != null && mRingErrorAnim.isRunning()) {
-            mRingErrorAnim.end();
-        }
+    /**
+     * @return the radius around the ring center that covers everything drawRing draws.
+     */
+    public int getBoundRadius() {
+        return Math.max(outerRadius, innerRadius + innerStrokeWidth) + 1;
     }
 
-
     public void doError() {
-        cancelAnim();
-        //ObjectAnimator innerColorAnim = getInnerErrorColorAnim();
-        //ObjectAnimator ringColorAnim = getRingErrorColorAnim();
-        //AnimatorSet animatorSet = new AnimatorSet();
-        //animatorSet.play(innerColorAnim).with(ringColorAnim);
-        //animatorSet.start();
-        //mRingErrorAnim = animatorSet;
-        setInnerColor(COLOR_WRONG);
-        setRingColor(COLOR_WRONG);
-    }
-
-    private ObjectAnimator getRingErrorColorAnim() {
-        PropertyValuesHolder pvColor = PropertyValuesHolder.ofInt(RING_COLOR,
-                COLOR_NORMAL, COLOR_WRONG);
-        ObjectAnimator colorAnim = ObjectAnimator.ofPropertyValuesHolder(
-                this, pvColor).setDuration(175);
-        colorAnim.setInterpolator(new LinearInterpolator());
-        colorAnim.addUpdateListener(this);
-        colorAnim.setAutoCancel(true);
-        return colorAnim;
+        mError = true;
+        mAnimating = false;
     }
 
-    private ObjectAnimator getInnerErrorColorAnim() {
-        PropertyValuesHolder pvColor = PropertyValuesHolder.ofInt(INNER_COLOR,
-                COLOR_NORMAL, COLOR_WRONG);
-        ObjectAnimator colorAnim = ObjectAnimator.ofPropertyValuesHolder(
-                this, pvColor).setDuration(175);
-        colorAnim.setInterpolator(new LinearInterpolator());
-        colorAnim.addUpdateListener(this);
-        colorAnim.setAutoCancel(true);
-        return colorAnim;
-    }
-
-
     public void resetRing() {
-        cancelAnim();
-        setInnerRadiusCircleScale(0);
-        setInnerColor(COLOR_INNER_COLOR);
-        setRingColor(COLOR_RING_COLOR);
-    }
-
-
-    @Override
-    public void onAnimationUpdate(ValueAnimator animation) {
-        mView.invalidate();
-    }
-
-    public float getStrokeRedAlpha() {
-        return strokeRedAlpha;
-    }
-
-    public void setStrokeRedAlpha(float strokeRedAlpha) {
-        this.strokeRedAlpha = strokeRedAlpha;
-    }
-
-    public float getInnerRadiusCircleScale() {
-        return innerRadiusCircleScale;
-    }
-
-    public void setInnerRadiusCircleScale(float innerRadiusCircleScale) {
-        this.innerRadiusCircleScale = innerRadiusCircleScale;
-    }
-
-    public float getInnerRadiusCircleAlpha() {
-        return innerRadiusCircleAlpha;
-    }
-
-    public void setInnerRadiusCircleAlpha(float innerRadiusCircleAlpha) {
-        this.innerRadiusCircleAlpha = innerRadiusCircleAlpha;
-    }
-
-    public float getOuterRadiusCircleScale() {
-        return outerRadiusCircleScale;
-    }
-
-    public void setOuterRadiusCircleScale(float outerRadiusCircleScale) {
-        this.outerRadiusCircleScale = outerRadiusCircleScale;
-    }
-
-    public float getOuterRadiusCircleAlpha() {
-        return outerRadiusCircleAlpha;
-    }
-
-    public void setOuterRadiusCircleAlpha(float outerRadiusCircleAlpha) {
-        this.outerRadiusCircleAlpha = outerRadiusCircleAlpha;
-    }
-
-    public int getInnerColor() {
-        return innerColor;
-    }
-
-    public void setInnerColor(int innerColor) {
-        this.innerColor = innerColor;
-    }
-
-    public int getRingColor() {
-        return ringColor;
-    }
-
-    public void setRingColor(int ringColor) {
-        this.ringColor = ringColor;
-    }
-
-    class EmptyAnimatorListener implements Animator.AnimatorListener {
-
-        @Override
-        public void onAnimationStart(Animator animation) {
-
-        }
-
-        @Override
-        public void onAnimationEnd(Animator animation) {
-
-        }
-
-        @Override
-        public void onAnimationCancel(Animator animation) {
-
-        }
-
-        @Override
-        public void onAnimationRepeat(Animator animation) {
-
-        }
-
+        mDownTime = NOT_HIT;
+        mError = false;
+        mAnimating = false;
     }
 }
@@ -0,0 +1,97 @@
+package widget;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * Every look of a ring, pre-rasterized into one bitmap, for
+ * {@link LockPatternView.RenderMode#Atlas}.
+ * <p/>
+ * All rings of a view share the size and colors of its idle ring, so a ring
+ * is one of {@link LockPatternRing#SPRITE_COUNT} sprites: idle, settled, both
+ * in the error colors and the hit animation cut into steps of
+ * {@link LockPatternRing#RING_ANIM_DURATION} / {@link LockPatternRing#SPRITE_STEPS}
+ * ms. Drawing a ring is then a single bitmap blit instead of three
+ * anti-aliased circles, paid for with one bitmap of about 28 sprites.
+ * <p/>
+ * The atlas is built on the first draw and again whenever the ring size
+ * changes. It is dropped on low memory and rebuilt on the next draw.
+ */
+public class LockPatternRingAtlas implements ComponentCallbacks2 {
+
+    private final LockPatternRing mStyle;
+    private final Rect mSrc = new Rect();
+    private final Rect mDst = new Rect();
+    private Bitmap mBitmap;
+    private int mRadius;
+    private int mColumns;
+
+    /**
+     * @param style The ring whose size and colors all rings share.
+     */
+    public LockPatternRingAtlas(LockPatternRing style) {
+        mStyle = style;
+    }
+
+    /**
+     * Draws {@code ring} as it looks at {@code frameTime}, see
+     * {@link LockPatternRing#drawRing(Canvas, float, float, long)}.
+     */
+    public void drawRing(Canvas canvas, LockPatternRing ring, float cx, float cy, long frameTime) {
+        final int radius = mStyle.getBoundRadius();
+        if (mBitmap == null || radius != mRadius) {
+            build(radius);
+        }
+        final int sprite = ring.getSprite(frameTime);
+        final int size = 2 * radius;
+        final int left = (sprite % mColumns) * size;
+        final int top = (sprite / mColumns) * size;
+        mSrc.set(left, top, left + size, top + size);
+        final int x = Math.round(cx) - radius;
+        final int y = Math.round(cy) - radius;
+        mDst.set(x, y, x + size, y + size);
+        canvas.drawBitmap(mBitmap, mSrc, mDst, null);
+    }
+
+    private void build(int radius) {
+        final int count = LockPatternRing.SPRITE_COUNT;
+        final int size = 2 * radius;
+        final int columns = (int) Math.ceil(Math.sqrt(count));
+        final int rows = (count + columns - 1) / columns;
+        final Bitmap bitmap = Bitmap.createBitmap(columns * size, rows * size, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        for (int i = 0; i < count; i++) {
+            mStyle.drawSprite(canvas, (i % columns) * size + radius, (i / columns) * size + radius, i);
+        }
+        mBitmap = bitmap;
+        mRadius = radius;
+        mColumns = columns;
+    }
+
+    /**
+     * Drops the bitmap; the next draw builds it again.
+     */
+    public void release() {
+        // not recycled: a display list still being rendered may refer to it
+        mBitmap = null;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            release();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        release();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
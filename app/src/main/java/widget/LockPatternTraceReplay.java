@@ -0,0 +1,52 @@
+package widget;
+
+import android.view.MotionEvent;
+
+/**
+ * Replays a {@link TouchTrace} into {@link LockPatternView#onTouchEvent},
+ * rebuilding every event with its historical samples, and measures the time
+ * each event takes and the area it invalidates.
+ * <p/>
+ * Meant for instrumentation or Robolectric tests: call it on the main thread
+ * with a view laid out at the size the trace was recorded on, see
+ * {@link LockPatternView#setTouchTrace}.
+ */
+public class LockPatternTraceReplay {
+
+    private LockPatternTraceReplay() {
+    }
+
+    public static TouchTraceReplayer.Result replay(LockPatternView view, TouchTrace trace) {
+        final TouchTraceReplayer.Result result = new TouchTraceReplayer.Result(trace);
+        boolean detected = false;
+        long downTime = 0;
+        for (int event = 0, count = trace.getEventCount(); event < count; event++) {
+            final int action = trace.getAction(event);
+            final int start = trace.getSampleStart(event);
+            final int end = trace.getSampleEnd(event);
+            if (action == TouchTrace.ACTION_DOWN) {
+                downTime = trace.getTime(start);
+            }
+            // the first sample becomes historical when the next one is added
+            final MotionEvent motionEvent = MotionEvent.obtain(downTime, trace.getTime(start), action,
+                    trace.getX(start), trace.getY(start), 0);
+            for (int i = start + 1; i < end; i++) {
+                motionEvent.addBatch(trace.getTime(i), trace.getX(i), trace.getY(i), 1f, 1f, 0);
+            }
+
+            final long area = view.getInvalidatedArea();
+            final long begin = System.nanoTime();
+            view.onTouchEvent(motionEvent);
+            result.setEvent(event, System.nanoTime() - begin, view.getInvalidatedArea() - area);
+            motionEvent.recycle();
+
+            if (action == TouchTrace.ACTION_DOWN) {
+                detected = false;
+            } else if (action == TouchTrace.ACTION_UP) {
+                detected = !view.getEngine().getPattern().isEmpty();
+            }
+        }
+        result.setPattern(view.getPatternCode(), detected);
+        return result;
+    }
+}
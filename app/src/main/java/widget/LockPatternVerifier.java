@@ -0,0 +1,34 @@
+package widget;
+
+/**
+ * Decides whether a detected pattern unlocks.
+ * <p/>
+ * Set with {@link LockPatternView#setPatternVerifier}. {@link #verify} runs on
+ * a background thread of {@link AsyncLockPatternVerifier}, so it may hash or do
+ * I/O but must not touch views.
+ */
+public interface LockPatternVerifier {
+
+    /**
+     * @param code The detected pattern.
+     * @return whether the pattern is correct. A runtime exception counts as
+     * not correct.
+     */
+    boolean verify(LockPatternCode code);
+
+    /**
+     * Receives verification results on the main thread.
+     */
+    interface Callback {
+
+        /**
+         * The view has already been switched to {@link LockPatternView.DisplayMode#Correct}
+         * or {@link LockPatternView.DisplayMode#Wrong}. Results that went stale
+         * because a new pattern was started are never delivered.
+         *
+         * @param code    The verified pattern.
+         * @param matched The result of {@link #verify}.
+         */
+        void onPatternVerified(LockPatternCode code, boolean matched);
+    }
+}
@@ -31,14 +31,15 @@ import android.view.View;
 import android.view.accessibility.AccessibilityManager;
 import com.gusturelock2.R;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 //import com.google.android.collect.Lists;
 
 /**
  * Displays and detects the user's unlock attempt, which is a drag of a finger
- * across 9 regions of the screen.
+ * across the regions of an N X N grid (3 X 3 by default, see
+ * {@code le_lpv_gridSize}).
  * <p/>
  * Is also capable of displaying a static pattern in "in progress", "wrong" or
  * "correct" states.
@@ -47,11 +48,15 @@ public class LockPatternView extends View {
 
     private final Context mContext;
     private final LockPatternHelper mLockPatternHelper;
+    private final LockPatternAnimator mLockPatternAnimator;
     // Aspect to use when rendering this view
     private static final int ASPECT_SQUARE = 0; // View will be the minimum of width/height
     private static final int ASPECT_LOCK_WIDTH = 1; // Fixed width; height will be minimum of (w,h)
     private static final int ASPECT_LOCK_HEIGHT = 2; // Fixed height; width will be minimum of (w,h)
     public static final int MIN_LOCK_PATTERN_SIZE = 4;
+    public static final int DEFAULT_GRID_SIZE = 3;
+    public static final int MIN_GRID_SIZE = 3;
+    public static final int MAX_GRID_SIZE = Cell.MAX_GRID_SIZE;
     private static final boolean PROFILE_DRAWING = false;
     private boolean mDrawingProfilingStarted = false;
 
@@ -60,9 +65,51 @@ public class LockPatternView extends View {
      * It didn't seem to have much impact on the devices tested, so currently set to 0.
      */
     private static final float DRAG_THRESHHOLD = 0.0f;
+    /**
+     * In {@link InvalidationPolicy#Adaptive}, tip moves shorter than this, in
+     * pixels, are combined with the next one.
+     */
+    private static final float ADAPTIVE_MIN_MOVE = 1f;
 
     private OnPatternListener mOnPatternListener;
-    private ArrayList<Cell> mPattern = new ArrayList<Cell>(9);
+    private AsyncLockPatternVerifier mPatternVerifier;
+    private LockPatternVerifier.Callback mOnPatternVerifiedListener;
+    private final LockPatternVerifier.Callback mVerifierCallback = new LockPatternVerifier.Callback() {
+        @Override
+        public void onPatternVerified(LockPatternCode code, boolean matched) {
+            // the pattern may have been cleared while it was verified
+            if (!code.equals(getPatternCode())) {
+                return;
+            }
+            setDisplayMode(matched ? DisplayMode.Correct : DisplayMode.Wrong);
+            if (mOnPatternVerifiedListener != null) {
+                mOnPatternVerifiedListener.onPatternVerified(code, matched);
+            }
+        }
+    };
+    private final int mGridSize;
+    private TouchTrace mTouchTrace;
+    private long mInvalidatedArea;
+    private LockPatternMetrics mMetrics;
+    private LockPatternLatencyTracker mLatencyTracker;
+    private RenderMode mRenderMode = RenderMode.Vector;
+    private LockPatternRingAtlas mRingAtlas;
+    private final LockPatternGridLayer mGridLayer = new LockPatternGridLayer();
+    /**
+     * The rings and the path through the cells; everything but the rubber
+     * band tip. Redrawn on the next steady draw after a cell is added, the
+     * pattern is reset or the display mode changes.
+     */
+    private final LockPatternGridLayer mCommittedLayer = new LockPatternGridLayer();
+    private boolean mCommittedDirty = true;
+    private boolean mAttached;
+    private long mDrawnInvalidatedArea;
+    private int mRingsDrawn;
+    /**
+     * Touch input state machine; {@link #mPattern} is its pattern.
+     */
+    private final LockPatternEngine mEngine;
+    private final List<Cell> mPattern;
 
     /**
      * Lookup table for the circles of the pattern we are currently drawing.
@@ -70,7 +117,7 @@ public class LockPatternView extends View {
      * in which case we use this to hold the cells we are drawing for the in
      * progress animation.
      */
-    private boolean[][] mPatternDrawLookup = new boolean[3][3];
+    private final boolean[][] mPatternDrawLookup;
 
     /**
      * the in progress point:
@@ -80,13 +127,44 @@ public class LockPatternView extends View {
     private float mInProgressX = -1;
     private float mInProgressY = -1;
 
+    private TipMode mTipMode = TipMode.Raw;
+    private TouchPredictor mTouchPredictor;
+    /**
+     * Where the rubber band tip is drawn while the user draws: the finger, or
+     * where it is predicted to be in {@link TipMode#Predicted}.
+     */
+    private float mTipX, mTipY;
+
+    private InvalidationPolicy mInvalidationPolicy = InvalidationPolicy.Always;
+    /**
+     * Whether a frame was asked for since the last draw; invalidating a
+     * detached or hidden view, or an area outside it, asks for none. Cleared
+     * by the draw, or by the next vsync if the draw never comes.
+     */
+    private boolean mFramePending;
+    private final Runnable mClearFramePending = new Runnable() {
+        @Override
+        public void run() {
+            mFramePending = false;
+        }
+    };
+    /**
+     * The tip as of the last frame that was asked for.
+     */
+    private float mInvalidatedTipX, mInvalidatedTipY;
+    /**
+     * Tip area that moves skipped while a frame was pending; the pending
+     * frame draws the tip there, and invalidates it again if it was clipped.
+     */
+    private final Rect mDeferredTipRect = new Rect();
+    private final Rect mTmpClipRect = new Rect();
+
     private long mAnimatingPeriodStart;
 
     private DisplayMode mPatternDisplayMode = DisplayMode.Correct;
     private boolean mInputEnabled = true;
     private boolean mInStealthMode = false;
     private boolean mEnableHapticFeedback = true;
-    private boolean mPatternInProgress = false;
 
     private float mDiameterFactor = 0.10f; // TODO: move to attrs
     // private final int mStrokeAlpha = 128;
@@ -95,9 +173,19 @@ public class LockPatternView extends View {
     private float mSquareWidth;
     private float mSquareHeight;
 
+    /**
+     * Cached path through the drawn cells of the pattern. It is extended in
+     * {@link #addCellToPattern} and always ends with one extra point, which
+     * {@link Path#setLastPoint} turns into the next cell. The rubber band tip
+     * is drawn separately, so that point stays on the last cell.
+     */
     private final Path mCurrentPath = new Path();
+    private boolean mPathDirty = true;
+    private int mPathCellCount;
+    private float mPathLastX, mPathLastY;
     private final Rect mInvalidate = new Rect();
     private final Rect mTmpInvalidateRect = new Rect();
+    private final float[] mTmpMoveBounds = new float[4];
 
     private int mRingWidth = 252;
     private int mRingHeight = 252;
@@ -107,84 +195,81 @@ public class LockPatternView extends View {
         return mLockPatternHelper;
     }
 
+    LockPatternEngine getEngine() {
+        return mEngine;
+    }
+
     /**
-     * Represents a cell in the 3 X 3 matrix of the unlock pattern view.
+     * How to display the current pattern.
      */
-    public static class Cell {
-        int row;
-        int column;
-
-        // keep # objects limited to 9
-        static Cell[][] sCells = new Cell[3][3];
+    public enum DisplayMode {
 
-        static {
-            for (int i = 0; i < 3; i++) {
-                for (int j = 0; j < 3; j++) {
-                    sCells[i][j] = new Cell(i, j);
-                }
-            }
-        }
+        /**
+         * The pattern drawn is correct (i.e draw it in a friendly color)
+         */
+        Correct,
 
         /**
-         * @param row    The row of the cell.
-         * @param column The column of the cell.
+         * Animate the pattern (for demo, and help).
          */
-        private Cell(int row, int column) {
-            checkRange(row, column);
-            this.row = row;
-            this.column = column;
-        }
+        Animate,
 
-        public int getRow() {
-            return row;
-        }
+        /**
+         * The pattern is wrong (i.e draw a foreboding color)
+         */
+        Wrong
+    }
 
-        public int getColumn() {
-            return column;
-        }
+    /**
+     * How to draw the rings.
+     */
+    public enum RenderMode {
 
         /**
-         * @param row    The row of the cell.
-         * @param column The column of the cell.
+         * Draw every ring with circles, each frame.
          */
-        public static synchronized Cell of(int row, int column) {
-            checkRange(row, column);
-            return sCells[row][column];
-        }
-
-        private static void checkRange(int row, int column) {
-            if (row < 0 || row > 2) {
-                throw new IllegalArgumentException("row must be in range 0-2");
-            }
-            if (column < 0 || column > 2) {
-                throw new IllegalArgumentException("column must be in range 0-2");
-            }
-        }
+        Vector,
 
-        public String toString() {
-            return "(row=" + row + ",clmn=" + column + ")";
-        }
+        /**
+         * Blit the rings from a pre-rasterized {@link LockPatternRingAtlas}.
+         */
+        Atlas
     }
 
     /**
-     * How to display the current pattern.
+     * Where to draw the rubber band tip while the user draws.
      */
-    public enum DisplayMode {
+    public enum TipMode {
 
         /**
-         * The pattern drawn is correct (i.e draw it in a friendly color)
+         * At the last touch sample.
          */
-        Correct,
+        Raw,
 
         /**
-         * Animate the pattern (for demo, and help).
+         * Where {@link TouchPredictor} expects the finger to be when the frame
+         * is shown, about a frame after the last touch sample; never past the
+         * edge of a cell that is not in the pattern yet.
          */
-        Animate,
+        Predicted
+    }
+
+    /**
+     * When moves of the finger that add no cell redraw the view.
+     */
+    public enum InvalidationPolicy {
 
         /**
-         * The pattern is wrong (i.e draw a foreboding color)
+         * On every move.
          */
-        Wrong
+        Always,
+
+        /**
+         * Only once the tip moved by a pixel, and not while a frame is still
+         * pending: that frame draws the tip where it is by then. Moves that
+         * add a cell always redraw.
+         */
+        Adaptive
     }
 
     /**
@@ -250,16 +335,47 @@ public class LockPatternView extends View {
         int lineColor = a.getColor(R.styleable.LeLockPatternView_le_lpv_lineColor, 0x80FFFFFF);
         int outerCircleColor = a.getColor(R.styleable.LeLockPatternView_le_lpv_outerCircleColor, Color.WHITE);
 
-        setClickable(true);
-        LockPatternRing[][] lockPatternRings = new LockPatternRing[3][3];
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                lockPatternRings[i][j] = new LockPatternRing(mContext, this, innerCircleColor, ringColor, outerCircleColor);
-            }
+        mGridSize = a.getInt(R.styleable.LeLockPatternView_le_lpv_gridSize, DEFAULT_GRID_SIZE);
+        final int renderMode = a.getInt(R.styleable.LeLockPatternView_le_lpv_renderMode,
+                RenderMode.Vector.ordinal());
+        a.recycle();
+        if (mGridSize < MIN_GRID_SIZE || mGridSize > MAX_GRID_SIZE) {
+            throw new IllegalArgumentException("le_lpv_gridSize must be in range "
+                    + MIN_GRID_SIZE + "-" + MAX_GRID_SIZE);
         }
-        LockPatternLine lockPatternLine = new LockPatternLine(this, lineColor);
+        mEngine = new LockPatternEngine(mGridSize);
+        mEngine.setListener(new LockPatternEngine.Listener() {
+            @Override
+            public void onPatternStart() {
+                notifyPatternStarted();
+            }
+
+            @Override
+            public void onPatternCleared() {
+                notifyPatternCleared();
+            }
+
+            @Override
+            public void onPatternCellAdded(Cell cell) {
+                addCellToPattern(cell);
+            }
+
+            @Override
+            public void onPatternDetected() {
+                notifyPatternDetected();
+            }
+        });
+        mPattern = mEngine.getPattern();
+        mPatternDrawLookup = new boolean[mGridSize][mGridSize];
+
+        setClickable(true);
+        // per cell ring state is only created when a cell is first hit
+        LockPatternRing idleRing = new LockPatternRing(mContext, innerCircleColor, ringColor, outerCircleColor);
+        LockPatternLine lockPatternLine = new LockPatternLine(lineColor);
 
-        mLockPatternHelper = new LockPatternHelper(this, lockPatternRings, lockPatternLine);
+        mLockPatternAnimator = new LockPatternAnimator(this);
+        mLockPatternHelper = new LockPatternHelper(this, idleRing, mGridSize, lockPatternLine, mLockPatternAnimator);
+        setRenderMode(RenderMode.values()[renderMode]);
 
     }
 
@@ -267,6 +383,13 @@ public class LockPatternView extends View {
         return BitmapFactory.decodeResource(getContext().getResources(), resId);
     }
 
+    /**
+     * @return The number of rows (and columns) of the pattern grid.
+     */
+    public int getGridSize() {
+        return mGridSize;
+    }
+
     /**
      * @return Whether the view is in stealth mode.
      */
@@ -289,6 +412,7 @@ public class LockPatternView extends View {
      */
     public void setInStealthMode(boolean inStealthMode) {
         mInStealthMode = inStealthMode;
+        mCommittedDirty = true;
     }
 
     /**
@@ -311,6 +435,130 @@ public class LockPatternView extends View {
         mOnPatternListener = onPatternListener;
     }
 
+    /**
+     * Verify every detected pattern with {@code verifier} on a background thread.
+     * The result switches the display mode to {@link DisplayMode#Correct} or
+     * {@link DisplayMode#Wrong} and is then passed to {@code listener}. Starting
+     * a new pattern cancels a verification that has not finished yet.
+     *
+     * @param verifier The verifier, or null to stop verifying.
+     * @param listener Receives the results on the main thread, may be null.
+     */
+    public void setPatternVerifier(LockPatternVerifier verifier,
+                                   LockPatternVerifier.Callback listener) {
+        if (mPatternVerifier != null) {
+            mPatternVerifier.shutdown();
+        }
+        mPatternVerifier = verifier == null ? null : new AsyncLockPatternVerifier(verifier);
+        mOnPatternVerifiedListener = listener;
+    }
+
+    /**
+     * Record every touch event, with its historical samples, into {@code trace}
+     * so it can be replayed with {@link LockPatternTraceReplay} or
+     * {@link TouchTraceReplayer}. Each detected pattern becomes the expected
+     * pattern of the trace.
+     *
+     * @param trace The trace to append to, or null to stop recording.
+     */
+    public void setTouchTrace(TouchTrace trace) {
+        mTouchTrace = trace;
+    }
+
+    /**
+     * Set how the rings are drawn. {@link RenderMode#Atlas} trades one bitmap
+     * for drawing each ring with a single blit.
+     */
+    public void setRenderMode(RenderMode renderMode) {
+        if (renderMode == mRenderMode) {
+            return;
+        }
+        if (mRingAtlas != null && mAttached) {
+            mContext.getApplicationContext().unregisterComponentCallbacks(mRingAtlas);
+        }
+        mRingAtlas = null;
+        mRenderMode = renderMode;
+        mCommittedDirty = true;
+        if (renderMode == RenderMode.Atlas) {
+            mRingAtlas = new LockPatternRingAtlas(mLockPatternHelper.getIdleRing());
+            if (mAttached) {
+                mContext.getApplicationContext().registerComponentCallbacks(mRingAtlas);
+            }
+        }
+        invalidate();
+    }
+
+    public RenderMode getRenderMode() {
+        return mRenderMode;
+    }
+
+    /**
+     * Set where the rubber band tip is drawn. {@link TipMode#Predicted} hides
+     * some of the lag between the finger and the line.
+     */
+    public void setTipMode(TipMode tipMode) {
+        mTipMode = tipMode;
+        if (tipMode == TipMode.Predicted && mTouchPredictor == null) {
+            mTouchPredictor = new TouchPredictor();
+        }
+    }
+
+    public TipMode getTipMode() {
+        return mTipMode;
+    }
+
+    /**
+     * Set when moves that add no cell redraw the view. With metrics enabled,
+     * {@link LockPatternMetrics#getCoalescedMoves()} and
+     * {@link LockPatternMetrics#getDeferredMoves()} count the saved redraws.
+     */
+    public void setInvalidationPolicy(InvalidationPolicy policy) {
+        mInvalidationPolicy = policy;
+    }
+
+    public InvalidationPolicy getInvalidationPolicy() {
+        return mInvalidationPolicy;
+    }
+
+    /**
+     * Collect render performance metrics, see {@link #getMetrics()}. Off by
+     * default; enabling it resets the metrics.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        if (enabled && mMetrics == null) {
+            mMetrics = new LockPatternMetrics();
+            mDrawnInvalidatedArea = mInvalidatedArea;
+        } else if (!enabled) {
+            mMetrics = null;
+        }
+    }
+
+    /**
+     * @return the render performance metrics, or null if they are not enabled.
+     */
+    public LockPatternMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Track the input to feedback latency of every cell added, see
+     * {@link #getLatencyTracker()}. Off by default, and free when off.
+     */
+    public void setLatencyTrackingEnabled(boolean enabled) {
+        if (enabled && mLatencyTracker == null) {
+            mLatencyTracker = new LockPatternLatencyTracker();
+        } else if (!enabled) {
+            mLatencyTracker = null;
+        }
+    }
+
+    /**
+     * @return the latency tracker, or null if latency tracking is not enabled.
+     */
+    public LockPatternLatencyTracker getLatencyTracker() {
+        return mLatencyTracker;
+    }
+
     /**
      * Set the pattern explicitely (rather than waiting for the user to input
      * a pattern).
@@ -319,12 +567,12 @@ public class LockPatternView extends View {
      * @param pattern     The pattern.
      */
     public void setPattern(DisplayMode displayMode, List<Cell> pattern) {
-        mPattern.clear();
-        mPattern.addAll(pattern);
+        mEngine.setPattern(pattern);
         clearPatternDrawLookup();
         for (Cell cell : pattern) {
             mPatternDrawLookup[cell.getRow()][cell.getColumn()] = true;
         }
+        invalidatePath();
 
         setDisplayMode(displayMode);
     }
@@ -338,6 +586,7 @@ public class LockPatternView extends View {
      */
     public void setDisplayMode(DisplayMode displayMode) {
         mPatternDisplayMode = displayMode;
+        mCommittedDirty = true;
         if (displayMode == DisplayMode.Animate) {
             if (mPattern.size() == 0) {
                 throw new IllegalStateException("you must have a pattern to "
@@ -348,6 +597,7 @@ public class LockPatternView extends View {
             mInProgressX = getCenterXForColumn(first.getColumn());
             mInProgressY = getCenterYForRow(first.getRow());
             clearPatternDrawLookup();
+            invalidatePath();
         } else if (displayMode == DisplayMode.Wrong) {
 
             if (!mInStealthMode) {
@@ -367,6 +617,9 @@ public class LockPatternView extends View {
     }
 
     private void notifyPatternStarted() {
+        if (mPatternVerifier != null) {
+            mPatternVerifier.cancel();
+        }
         sendAccessEvent(R.string.lockscreen_access_pattern_start);
         if (mOnPatternListener != null) {
             mOnPatternListener.onPatternStart();
@@ -378,6 +631,12 @@ public class LockPatternView extends View {
         if (mOnPatternListener != null) {
             mOnPatternListener.onPatternDetected(mPattern);
         }
+        if (mPatternVerifier != null) {
+            mPatternVerifier.submit(getPatternCode(), mVerifierCallback);
+        }
+        if (mTouchTrace != null) {
+            mTouchTrace.setExpectedPattern(getPatternCode());
+        }
     }
 
     private void notifyPatternCleared() {
@@ -387,6 +646,14 @@ public class LockPatternView extends View {
         }
     }
 
+    /**
+     * @return The current pattern in packed form, e.g. to check it against a
+     * stored {@link LockPatternCode} from {@link OnPatternListener#onPatternDetected}.
+     */
+    public LockPatternCode getPatternCode() {
+        return mEngine.getPatternCode();
+    }
+
     /**
      * Clear the pattern.
      */
@@ -398,8 +665,9 @@ public class LockPatternView extends View {
      * Reset all pattern state.
      */
     private void resetPattern() {
-        mPattern.clear();
+        mEngine.clearPattern();
         clearPatternDrawLookup();
+        invalidatePath();
         mPatternDisplayMode = DisplayMode.Correct;
         mLockPatternHelper.reset();
         invalidate();
@@ -409,8 +677,8 @@ public class LockPatternView extends View {
      * Clear the pattern lookup table.
      */
     private void clearPatternDrawLookup() {
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
+        for (int i = 0; i < mGridSize; i++) {
+            for (int j = 0; j < mGridSize; j++) {
                 mPatternDrawLookup[i][j] = false;
             }
         }
@@ -431,13 +699,65 @@ public class LockPatternView extends View {
         mInputEnabled = true;
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttached = true;
+        // pick up animations that were started while detached
+        mLockPatternAnimator.start();
+        mContext.getApplicationContext().registerComponentCallbacks(mGridLayer);
+        mContext.getApplicationContext().registerComponentCallbacks(mCommittedLayer);
+        if (mRingAtlas != null) {
+            // the atlas is dropped when memory runs low
+            mContext.getApplicationContext().registerComponentCallbacks(mRingAtlas);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        mAttached = false;
+        // the pending frame, if any, is never drawn
+        mFramePending = false;
+        removeCallbacks(mClearFramePending);
+        mDeferredTipRect.setEmpty();
+        mLockPatternAnimator.stop();
+        mContext.getApplicationContext().unregisterComponentCallbacks(mGridLayer);
+        mGridLayer.release();
+        mContext.getApplicationContext().unregisterComponentCallbacks(mCommittedLayer);
+        mCommittedLayer.release();
+        if (mRingAtlas != null) {
+            mContext.getApplicationContext().unregisterComponentCallbacks(mRingAtlas);
+            mRingAtlas.release();
+        }
+        if (mPatternVerifier != null) {
+            mPatternVerifier.cancel();
+        }
+        super.onDetachedFromWindow();
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        updateGeometry(w, h);
+    }
+
+    @Override
+    public void setPadding(int left, int top, int right, int bottom) {
+        super.setPadding(left, top, right, bottom);
+        if (getWidth() > 0 && getHeight() > 0) {
+            updateGeometry(getWidth(), getHeight());
+        }
+    }
+
+    private void updateGeometry(int w, int h) {
         final int width = w - getPaddingLeft() - getPaddingRight();
-        mSquareWidth = width / 3.0f;
+        mSquareWidth = width / (float) mGridSize;
 
         final int height = h - getPaddingTop() - getPaddingBottom();
-        mSquareHeight = height / 3.0f;
+        mSquareHeight = height / (float) mGridSize;
+
+        mEngine.setGeometry(getPaddingLeft(), getPaddingTop(), width, height, mHitFactor);
+        mLockPatternHelper.setCellSize(Math.min(mSquareWidth, mSquareHeight));
+        invalidatePath();
     }
 
     private int resolveMeasured(int measureSpec, int desired) {
@@ -459,14 +779,14 @@ public class LockPatternView extends View {
 
     @Override
     protected int getSuggestedMinimumWidth() {
-        // View should be large enough to contain 3 side-by-side target bitmaps
-        return 3 * mRingWidth;
+        // View should be large enough to contain mGridSize side-by-side target bitmaps
+        return mGridSize * mRingWidth;
     }
 
     @Override
     protected int getSuggestedMinimumHeight() {
-        // View should be large enough to contain 3 side-by-side target bitmaps
-        return 3 * mRingWidth;
+        // View should be large enough to contain mGridSize side-by-side target bitmaps
+        return mGridSize * mRingWidth;
     }
 
     @Override
@@ -492,123 +812,86 @@ public class LockPatternView extends View {
     }
 
     /**
-     * Determines whether the point x, y will add a new point to the current
-     * pattern (in addition to finding the cell, also makes heuristic choices
-     * such as filling in gaps based on current pattern).
-     *
-     * @param x The x coordinate.
-     * @param y The y coordinate.
+     * A cell was added to the pattern of {@link #mEngine}.
      */
-    private Cell detectAndAddHit(float x, float y) {
-        final Cell cell = checkForNewHit(x, y);
-        if (cell != null) {
-
-            // check for gaps in existing pattern
-            Cell fillInGapCell = null;
-            final ArrayList<Cell> pattern = mPattern;
-            if (!pattern.isEmpty()) {
-                final Cell lastCell = pattern.get(pattern.size() - 1);
-                int dRow = cell.row - lastCell.row;
-                int dColumn = cell.column - lastCell.column;
-
-                int fillInRow = lastCell.row;
-                int fillInColumn = lastCell.column;
-
-                if (Math.abs(dRow) == 2 && Math.abs(dColumn) != 1) {
-                    fillInRow = lastCell.row + ((dRow > 0) ? 1 : -1);
-                }
-
-                if (Math.abs(dColumn) == 2 && Math.abs(dRow) != 1) {
-                    fillInColumn = lastCell.column + ((dColumn > 0) ? 1 : -1);
-                }
-
-                fillInGapCell = Cell.of(fillInRow, fillInColumn);
-            }
-
-            if (fillInGapCell != null &&
-                    !mPatternDrawLookup[fillInGapCell.row][fillInGapCell.column]) {
-                addCellToPattern(fillInGapCell);
-            }
-            addCellToPattern(cell);
-            if (mEnableHapticFeedback) {
-                performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY,
-                        HapticFeedbackConstants.FLAG_IGNORE_VIEW_SETTING
-                                | HapticFeedbackConstants.FLAG_IGNORE_GLOBAL_SETTING);
-            }
-            return cell;
-        }
-        return null;
-    }
-
     private void addCellToPattern(Cell newCell) {
+        final LockPatternLatencyTracker latencyTracker = mLatencyTracker;
+        if (latencyTracker != null) {
+            latencyTracker.onCellHit(mEngine.getLastTime());
+        }
 
         if (!mInStealthMode) {
             mLockPatternHelper.moveAnim(newCell.row, newCell.column);
+            if (latencyTracker != null) {
+                latencyTracker.onAnimationStarted();
+            }
         }
         mPatternDrawLookup[newCell.getRow()][newCell.getColumn()] = true;
-        mPattern.add(newCell);
-        notifyCellAdded();
-    }
-
-    // helper method to find which cell a point maps to
-    public Cell checkForNewHit(float x, float y) {
-
-        final int rowHit = getRowHit(y);
-        if (rowHit < 0) {
-            return null;
-        }
-        final int columnHit = getColumnHit(x);
-        if (columnHit < 0) {
-            return null;
+        mCommittedDirty = true;
+        if (!mPathDirty && mPathCellCount == mPattern.size() - 1) {
+            appendToPath(newCell);
+        } else {
+            mPathDirty = true;
         }
-
-        if (mPatternDrawLookup[rowHit][columnHit]) {
-            return null;
+        notifyCellAdded();
+        if (latencyTracker != null) {
+            latencyTracker.onListenerNotified();
         }
-        return Cell.of(rowHit, columnHit);
     }
 
     /**
-     * Helper method to find the row that y falls into.
-     *
-     * @param y The y coordinate
-     * @return The row that y falls in, or -1 if it falls in no row.
+     * Drop the cached pattern path; it is rebuilt on the next draw.
      */
-    private int getRowHit(float y) {
-
-        final float squareHeight = mSquareHeight;
-        float hitSize = squareHeight * mHitFactor;
-
-        float offset = getPaddingTop() + (squareHeight - hitSize) / 2f;
-        for (int i = 0; i < 3; i++) {
+    private void invalidatePath() {
+        mPathDirty = true;
+        mCommittedDirty = true;
+    }
 
-            final float hitTop = offset + squareHeight * i;
-            if (y >= hitTop && y <= hitTop + hitSize) {
-                return i;
+    /**
+     * Rebuild the cached path from the part of the pattern stored in the
+     * lookup table (this is only different in the case of animation).
+     */
+    private void rebuildPath() {
+        mCurrentPath.rewind();
+        mPathCellCount = 0;
+        final List<Cell> pattern = mPattern;
+        for (int i = 0, count = pattern.size(); i < count; i++) {
+            Cell cell = pattern.get(i);
+            if (!mPatternDrawLookup[cell.row][cell.column]) {
+                break;
             }
+            appendToPath(cell);
         }
-        return -1;
+        mPathDirty = false;
     }
 
-    /**
-     * Helper method to find the column x fallis into.
-     *
-     * @param x The x coordinate.
-     * @return The column that x falls in, or -1 if it falls in no column.
-     */
-    private int getColumnHit(float x) {
-        final float squareWidth = mSquareWidth;
-        float hitSize = squareWidth * mHitFactor;
+    private void appendToPath(Cell cell) {
+        final float centerX = getCenterXForColumn(cell.column);
+        final float centerY = getCenterYForRow(cell.row);
+        if (mPathCellCount == 0) {
+            mCurrentPath.moveTo(centerX, centerY);
+        } else {
+            // turn the old tip into this cell
+            mCurrentPath.setLastPoint(centerX, centerY);
+        }
+        // new tip, moved in onDraw
+        mCurrentPath.lineTo(centerX, centerY);
+        mPathLastX = centerX;
+        mPathLastY = centerY;
+        mPathCellCount++;
+    }
 
-        float offset = getPaddingLeft() + (squareWidth - hitSize) / 2f;
-        for (int i = 0; i < 3; i++) {
+    // helper method to find which cell a point maps to
+    public Cell checkForNewHit(float x, float y) {
+        return mEngine.checkForNewHit(x, y);
+    }
 
-            final float hitLeft = offset + squareWidth * i;
-            if (x >= hitLeft && x <= hitLeft + hitSize) {
-                return i;
-            }
+    private void performHitFeedback() {
+        if (mEnableHapticFeedback) {
+            performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY,
+                    HapticFeedbackConstants.FLAG_IGNORE_VIEW_SETTING
+                            | HapticFeedbackConstants.FLAG_IGNORE_GLOBAL_SETTING);
         }
-        return -1;
     }
 
     @Override
@@ -639,6 +922,9 @@ public class LockPatternView extends View {
         if (!mInputEnabled || !isEnabled()) {
             return false;
         }
+        if (mTouchTrace != null) {
+            recordTouchEvent(event);
+        }
         switch (event.getAction()) {
             case MotionEvent.ACTION_DOWN:
                 handleActionDown(event);
@@ -650,11 +936,10 @@ public class LockPatternView extends View {
                 handleActionMove2(event);
                 return true;
             case MotionEvent.ACTION_CANCEL:
-                if (mPatternInProgress) {
-                    mPatternInProgress = false;
+                if (mEngine.isPatternInProgress()) {
                     resetPattern();
-                    notifyPatternCleared();
                 }
+                mEngine.onCancel();
                 if (PROFILE_DRAWING) {
                     if (mDrawingProfilingStarted) {
                         Debug.stopMethodTracing();
@@ -666,21 +951,99 @@ public class LockPatternView extends View {
         return false;
     }
 
+    private void recordTouchEvent(MotionEvent event) {
+        final TouchTrace trace = mTouchTrace;
+        final int action = event.getAction();
+        if (action < TouchTrace.ACTION_DOWN || action > TouchTrace.ACTION_CANCEL) {
+            return;
+        }
+        if (action == TouchTrace.ACTION_DOWN) {
+            trace.setGeometry(mGridSize, getPaddingLeft(), getPaddingTop(),
+                    mSquareWidth * mGridSize, mSquareHeight * mGridSize, mHitFactor);
+            trace.setExpectedPattern(null);
+        }
+        trace.beginEvent(action);
+        for (int i = 0, historySize = event.getHistorySize(); i < historySize; i++) {
+            trace.addSample(event.getHistoricalX(i), event.getHistoricalY(i),
+                    event.getHistoricalEventTime(i));
+        }
+        trace.addSample(event.getX(), event.getY(), event.getEventTime());
+    }
+
+    /**
+     * @return the area, in pixels, invalidated since the view was created;
+     * {@link LockPatternTraceReplay} reports it per event.
+     */
+    long getInvalidatedArea() {
+        return mInvalidatedArea;
+    }
+
+    /**
+     * @return whether invalidating the area from (l, t) to (r, b) draws a
+     * frame: the view is attached and shown in a visible window, and the area
+     * overlaps it.
+     */
+    private boolean drawsFrame(int l, int t, int r, int b) {
+        return mAttached && isShown() && getWindowVisibility() == VISIBLE
+                && l < r && t < b && l < getWidth() && t < getHeight() && r > 0 && b > 0;
+    }
+
+    private void onInvalidated(int l, int t, int r, int b) {
+        if (!mFramePending && drawsFrame(l, t, r, b)) {
+            mFramePending = true;
+            // should the draw be dropped, the next vsync still clears the flag
+            postOnAnimation(mClearFramePending);
+        }
+    }
+
+    @Override
+    public void invalidate() {
+        onInvalidated(0, 0, getWidth(), getHeight());
+        mInvalidatedArea += (long) getWidth() * getHeight();
+        super.invalidate();
+    }
+
+    @Override
+    public void invalidate(Rect dirty) {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        onInvalidated(dirty.left, dirty.top, dirty.right, dirty.bottom);
+        mInvalidatedArea += (long) dirty.width() * dirty.height();
+        super.invalidate(dirty);
+    }
+
+    @Override
+    public void invalidate(int l, int t, int r, int b) {
+        if (r <= l || b <= t) {
+            return;
+        }
+        onInvalidated(l, t, r, b);
+        mInvalidatedArea += (long) (r - l) * (b - t);
+        super.invalidate(l, t, r, b);
+    }
+
     private void handleActionMove2(MotionEvent event) {
         // Handle all recent motion events so we don't skip any cells even when the device
         // is busy...
         final float radius = (mSquareWidth * mDiameterFactor * 0.5f);
         final int historySize = event.getHistorySize();
+        final boolean predicted = mTipMode == TipMode.Predicted;
         mTmpInvalidateRect.setEmpty();
         boolean invalidateNow = false;
+        boolean cellAdded = false;
         for (int i = 0; i < historySize + 1; i++) {
             final float x = i < historySize ? event.getHistoricalX(i) : event.getX();
             final float y = i < historySize ? event.getHistoricalY(i) : event.getY();
-            Cell hitCell = detectAndAddHit(x, y);
-            final int patternSize = mPattern.size();
-            if (hitCell != null && patternSize == 1) {
-                mPatternInProgress = true;
-                notifyPatternStarted();
+            final long time = i < historySize ? event.getHistoricalEventTime(i) : event.getEventTime();
+            if (predicted) {
+                mTouchPredictor.addSample(x, y, time);
+            }
+            final int sizeBefore = mPattern.size();
+            Cell hitCell = mEngine.onMove(x, y, time);
+            if (hitCell != null) {
+                cellAdded = true;
+                performHitFeedback();
             }
             // note current x and y for rubber banding of in progress patterns
             final float dx = Math.abs(x - mInProgressX);
@@ -689,42 +1052,25 @@ public class LockPatternView extends View {
                 invalidateNow = true;
             }
 
-            if (mPatternInProgress && patternSize > 0) {
-                final ArrayList<Cell> pattern = mPattern;
-                final Cell lastCell = pattern.get(patternSize - 1);
-                float lastCellCenterX = getCenterXForColumn(lastCell.column);
-                float lastCellCenterY = getCenterYForRow(lastCell.row);
-
-                // Adjust for drawn segment from last cell to (x,y). Radius accounts for line width.
-                float left = Math.min(lastCellCenterX, x) - radius;
-                float right = Math.max(lastCellCenterX, x) + radius;
-                float top = Math.min(lastCellCenterY, y) - radius;
-                float bottom = Math.max(lastCellCenterY, y) + radius;
-
-                // Invalidate between the pattern's new cell and the pattern's previous cell
-                if (hitCell != null) {
-                    final float width = mSquareWidth * 0.5f;
-                    final float height = mSquareHeight * 0.5f;
-                    final float hitCellCenterX = getCenterXForColumn(hitCell.column);
-                    final float hitCellCenterY = getCenterYForRow(hitCell.row);
-
-                    left = Math.min(hitCellCenterX - width, left);
-                    right = Math.max(hitCellCenterX + width, right);
-                    top = Math.min(hitCellCenterY - height, top);
-                    bottom = Math.max(hitCellCenterY + height, bottom);
-
-                }
-
-                // Invalidate between the pattern's last cell and the previous location
-                mTmpInvalidateRect.union(Math.round(left), Math.round(top),
-                        Math.round(right), Math.round(bottom));
+            if (mEngine.getMoveBounds(sizeBefore, x, y, radius, mTmpMoveBounds)) {
+                unionMoveBounds();
             }
         }
         mInProgressX = event.getX();
         mInProgressY = event.getY();
+        updateTip(event.getEventTime());
+        // the predicted tip may lie past the finger
+        if (predicted && mEngine.getMoveBounds(mPattern.size(), mTipX, mTipY, radius, mTmpMoveBounds)) {
+            unionMoveBounds();
+        }
 
         // To save updates, we only invalidate if the user moved beyond a certain amount.
+        if (invalidateNow && !cellAdded && mInvalidationPolicy == InvalidationPolicy.Adaptive) {
+            invalidateNow = deferTipMove();
+        }
         if (invalidateNow) {
+            mInvalidatedTipX = mTipX;
+            mInvalidatedTipY = mTipY;
             mInvalidate.union(mTmpInvalidateRect);
             invalidate(mInvalidate);
             mInvalidate.set(mTmpInvalidateRect);
@@ -796,15 +1142,54 @@ public class LockPatternView extends View {
     //    }
     //}
 
+    private void unionMoveBounds() {
+        final float[] bounds = mTmpMoveBounds;
+        mTmpInvalidateRect.union(Math.round(bounds[0]), Math.round(bounds[1]),
+                Math.round(bounds[2]), Math.round(bounds[3]));
+    }
+
     private void sendAccessEvent(int resId) {
-        announceForAccessibility(getContext().getString(resId));
+        // the announcement is built for nothing when no service listens
+        final AccessibilityManager accessibilityManager =
+                (AccessibilityManager) getContext().getSystemService(Context.ACCESSIBILITY_SERVICE);
+        if (accessibilityManager != null && accessibilityManager.isEnabled()) {
+            announceForAccessibility(getContext().getString(resId));
+        }
+    }
+
+    /**
+     * Decides, in {@link InvalidationPolicy#Adaptive}, whether a move that
+     * added no cell redraws the view now.
+     *
+     * @return false if the move is combined with the next one or left to the
+     * pending frame.
+     */
+    private boolean deferTipMove() {
+        final LockPatternMetrics metrics = mMetrics;
+        if (Math.abs(mTipX - mInvalidatedTipX) < ADAPTIVE_MIN_MOVE
+                && Math.abs(mTipY - mInvalidatedTipY) < ADAPTIVE_MIN_MOVE) {
+            if (metrics != null) {
+                metrics.recordCoalescedMove();
+            }
+            return false;
+        }
+        if (!mFramePending) {
+            return true;
+        }
+        mDeferredTipRect.union(mTmpInvalidateRect);
+        // the pending frame draws the tip here, so the next move erases it from here
+        mInvalidate.set(mTmpInvalidateRect);
+        mInvalidatedTipX = mTipX;
+        mInvalidatedTipY = mTipY;
+        if (metrics != null) {
+            metrics.recordDeferredMove();
+        }
+        return false;
     }
 
     private void handleActionUp(MotionEvent event) {
         // report pattern detected
-        if (!mPattern.isEmpty()) {
-            mPatternInProgress = false;
-            notifyPatternDetected();
+        if (mEngine.onUp(event.getX(), event.getY(), event.getEventTime())) {
             invalidate();
         }
         if (PROFILE_DRAWING) {
@@ -819,17 +1204,11 @@ public class LockPatternView extends View {
         resetPattern();
         final float x = event.getX();
         final float y = event.getY();
-        final Cell hitCell = detectAndAddHit(x, y);
+        final Cell hitCell = mEngine.onDown(x, y, event.getEventTime());
         if (hitCell != null) {
-            mPatternInProgress = true;
+            performHitFeedback();
             mPatternDisplayMode = DisplayMode.Correct;
-            notifyPatternStarted();
 
-        } else if (mPatternInProgress) {
-            mPatternInProgress = false;
-            notifyPatternCleared();
-        }
-        if (hitCell != null) {
             final float startX = getCenterXForColumn(hitCell.column);
             final float startY = getCenterYForRow(hitCell.row);
 
@@ -841,6 +1220,14 @@ public class LockPatternView extends View {
         }
         mInProgressX = x;
         mInProgressY = y;
+        if (mTipMode == TipMode.Predicted) {
+            mTouchPredictor.reset();
+            mTouchPredictor.addSample(x, y, event.getEventTime());
+        }
+        updateTip(event.getEventTime());
+        mInvalidatedTipX = mTipX;
+        mInvalidatedTipY = mTipY;
+        mDeferredTipRect.setEmpty();
         if (PROFILE_DRAWING) {
             if (!mDrawingProfilingStarted) {
                 Debug.startMethodTracing("LockPatternDrawing");
@@ -850,166 +1237,206 @@ public class LockPatternView extends View {
         mLockPatternHelper.resetLine();
     }
 
+    /**
+     * Places the rubber band tip for a frame showing the touch samples up to
+     * {@code eventTime}: at the finger, or in {@link TipMode#Predicted} a frame
+     * ahead of it, pulled back to the edge of the first cell on the way that
+     * is not in the pattern so the line never seems to reach a cell before it
+     * is added.
+     */
+    private void updateTip(long eventTime) {
+        mTipX = mInProgressX;
+        mTipY = mInProgressY;
+        if (mTipMode != TipMode.Predicted
+                || !mTouchPredictor.predict(eventTime + TouchPredictor.DEFAULT_HORIZON_MILLIS)) {
+            return;
+        }
+        final float predictedX = mTouchPredictor.getPredictedX();
+        final float predictedY = mTouchPredictor.getPredictedY();
+        final float limit = mEngine.getUnvisitedLimit(mInProgressX, mInProgressY, predictedX, predictedY);
+        mTipX = mInProgressX + (predictedX - mInProgressX) * limit;
+        mTipY = mInProgressY + (predictedY - mInProgressY) * limit;
+    }
+
     public float getCenterXForColumn(int column) {
-        return getPaddingLeft() + column * mSquareWidth + mSquareWidth / 2f;
+        return mEngine.getCenterXForColumn(column);
     }
 
     public float getCenterYForRow(int row) {
-        return getPaddingTop() + row * mSquareHeight + mSquareHeight / 2f;
+        return mEngine.getCenterYForRow(row);
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
-        final ArrayList<Cell> pattern = mPattern;
-        final int count = pattern.size();
-        final boolean[][] drawLookup = mPatternDrawLookup;
-
-        final float squareWidth = mSquareWidth;
-        final float squareHeight = mSquareHeight;
+        final LockPatternMetrics metrics = mMetrics;
+        final long drawStart = metrics != null ? System.nanoTime() : 0;
+        mRingsDrawn = 0;
+        mFramePending = false;
+
+        // the rings and the path through the cells only change when a cell is
+        // added, the pattern is reset or the display mode changes; in between
+        // they come from the committed layer and only the rubber band tip is
+        // drawn live. Animations and the error line change them every frame,
+        // so they are drawn live without rebuilding the layer; whatever
+        // started them dirtied it, so the first steady draw after rebuilds it
+        if (mLockPatternHelper.isLineError || mLockPatternHelper.isAnimating()) {
+            drawCommitted(canvas);
+        } else {
+            final Bitmap committedLayer = getCommittedLayer();
+            if (committedLayer != null) {
+                canvas.drawBitmap(committedLayer, 0, 0, null);
+            } else {
+                drawCommitted(canvas);
+            }
+        }
 
-        final Path currentPath = mCurrentPath;
+        // the last in progress section, from the last cell to the finger (or
+        // to the tip of the animating line)
+        if (!mInStealthMode && mPathCellCount > 0
+                && (mEngine.isPatternInProgress() || mPatternDisplayMode == DisplayMode.Animate)) {
+            if (mEngine.isPatternInProgress()) {
+                mLockPatternHelper.drawTip(canvas, mPathLastX, mPathLastY, mTipX, mTipY);
+            } else {
+                mLockPatternHelper.drawTip(canvas, mPathLastX, mPathLastY, mInProgressX, mInProgressY);
+            }
+        }
 
-        currentPath.rewind();
+        if (!mInStealthMode && mLockPatternHelper.isLineError) {
+            mLockPatternHelper.getLockPatternLine().doLineErrorDraw(canvas);
+        }
 
-        // draw the circles
-        final int paddingTop = getPaddingTop();
-        final int paddingLeft = getPaddingLeft();
+        if (metrics != null) {
+            metrics.recordDraw(System.nanoTime() - drawStart, mRingsDrawn,
+                    mInvalidatedArea - mDrawnInvalidatedArea);
+            mDrawnInvalidatedArea = mInvalidatedArea;
+        }
+        if (mLatencyTracker != null) {
+            mLatencyTracker.onDrawn();
+        }
 
-        for (int i = 0; i < 3; i++) {
-            float topY = paddingTop + i * squareHeight;
-            for (int j = 0; j < 3; j++) {
-                float leftX = paddingLeft + j * squareWidth;
-                //drawCircle(canvas, (int) leftX, (int) topY, drawLookup[i][j]);
-                drawCircle(canvas, (int) leftX, (int) topY, drawLookup[i][j], i, j);
+        // moves skipped while this frame was pending moved the tip; redraw it
+        // if this frame was clipped to the area invalidated before
+        if (!mDeferredTipRect.isEmpty()) {
+            if (!canvas.getClipBounds(mTmpClipRect) || !mTmpClipRect.contains(mDeferredTipRect)) {
+                invalidate(mDeferredTipRect);
             }
+            mDeferredTipRect.setEmpty();
         }
+    }
 
-        // TODO: the path should be created and cached every time we hit-detect a cell
-        // only the last segment of the path should be computed here
-        // draw the path of the pattern (unless the user is in progress, and
-        // we are in stealth mode)
-        final boolean drawPath = (!mInStealthMode || mPatternDisplayMode == DisplayMode.Wrong);
-
-        // draw the arrows associated with the path (unless the user is in progress, and
-        // we are in stealth mode)
-        // boolean oldFlag = (mPaint.getFlags() & Paint.FILTER_BITMAP_FLAG) != 0;
-        // mPaint.setFilterBitmap(true); // draw with higher quality since we render with transforms
-
-        //drawArrow
-        //if (drawPath) {
-        //    for (int i = 0; i < count - 1; i++) {
-        //        Cell cell = pattern.get(i);
-        //        Cell next = pattern.get(i + 1);
-        //
-        //        // only draw the part of the pattern stored in
-        //        // the lookup table (this is only different in the case
-        //        // of animation).
-        //        if (!drawLookup[next.row][next.column]) {
-        //            break;
-        //        }
-        //
-        //        //float leftX = paddingLeft + cell.column * squareWidth;
-        //        //float topY = paddingTop + cell.row * squareHeight;
-        //        //drawArrow(canvas, leftX, topY, cell, next);
-        //    }
-        //}
-
-        if (drawPath) {
-            boolean anyCircles = false;
-            for (int i = 0; i < count; i++) {
-                Cell cell = pattern.get(i);
-
-                // only draw the part of the pattern stored in
-                // the lookup table (this is only different in the case
-                // of animation).
-                if (!drawLookup[cell.row][cell.column]) {
-                    break;
-                }
-                anyCircles = true;
-
-                float centerX = getCenterXForColumn(cell.column);
-                float centerY = getCenterYForRow(cell.row);
-                if (i == 0) {
-                    currentPath.moveTo(centerX, centerY);
-                } else {
-                    currentPath.lineTo(centerX, centerY);
+    /**
+     * Draws the rings and the path through the cells of the pattern, without
+     * the in progress section.
+     */
+    private void drawCommitted(Canvas canvas) {
+        final boolean[][] drawLookup = mPatternDrawLookup;
+        final long frameTime = mLockPatternAnimator.getFrameTime();
+
+        // draw the circles: idle rings come from the cached grid layer, the
+        // cells of all other rings are cut out of it and drawn live
+        final Bitmap gridLayer = getGridLayer();
+        if (gridLayer != null) {
+            final int saveCount = canvas.save();
+            for (int i = 0; i < mGridSize; i++) {
+                final float centerY = getCenterYForRow(i);
+                for (int j = 0; j < mGridSize; j++) {
+                    final LockPatternRing ring = mLockPatternHelper.getRing(i, j);
+                    if (!ring.isIdle()) {
+                        final float centerX = getCenterXForColumn(j);
+                        final int radius = ring.getBoundRadius();
+                        canvas.clipRect(centerX - radius, centerY - radius, centerX + radius,
+                                centerY + radius, Region.Op.DIFFERENCE);
+                    }
                 }
             }
-            // add last in progress section
-            if ((mPatternInProgress || mPatternDisplayMode == DisplayMode.Animate)
-                    && anyCircles) {
-                currentPath.lineTo(mInProgressX, mInProgressY);
-            }
-
-            if (!mInStealthMode) {
-                mLockPatternHelper.drawLine(canvas, currentPath);
+            canvas.drawBitmap(gridLayer, 0, 0, null);
+            canvas.restoreToCount(saveCount);
+        }
+        for (int i = 0; i < mGridSize; i++) {
+            final float centerY = getCenterYForRow(i);
+            for (int j = 0; j < mGridSize; j++) {
+                if (gridLayer == null || !mLockPatternHelper.getRing(i, j).isIdle()) {
+                    drawCircle(canvas, getCenterXForColumn(j), centerY, drawLookup[i][j], i, j, frameTime);
+                }
             }
         }
-        //mPaint.setFilterBitmap(oldFlag); // restore default flag
 
+        // draw the path of the pattern (unless the user is in progress, and
+        // we are in stealth mode). The path through the cells is cached.
+        final boolean drawPath = (!mInStealthMode || mPatternDisplayMode == DisplayMode.Wrong);
 
-        if (!mInStealthMode && mLockPatternHelper.isLineError) {
-            mLockPatternHelper.getLockPatternLine().doLineErrorDraw(canvas);
+        if (mPathDirty) {
+            rebuildPath();
+        }
+        if (drawPath && mPathCellCount > 0 && !mInStealthMode) {
+            // the tip is drawn separately, pin it to the last cell
+            mCurrentPath.setLastPoint(mPathLastX, mPathLastY);
+            mLockPatternHelper.drawLine(canvas, mCurrentPath);
         }
     }
 
-
-    //private void drawArrow(Canvas canvas, float leftX, float topY, Cell start, Cell end) {
-    //    boolean green = mPatternDisplayMode != DisplayMode.Wrong;
-    //
-    //    final int endRow = end.row;
-    //    final int startRow = start.row;
-    //    final int endColumn = end.column;
-    //    final int startColumn = start.column;
-    //
-    //    // offsets for centering the bitmap in the cell
-    //    final int offsetX = ((int) mSquareWidth - mRingWidth) / 2;
-    //    final int offsetY = ((int) mSquareHeight - mRingHeight) / 2;
-    //
-    //    // compute transform to place arrow bitmaps at correct angle inside circle.
-    //    // This assumes that the arrow image is drawn at 12:00 with it's top edge
-    //    // coincident with the circle bitmap's top edge.
-    //    Bitmap arrow = green ? mBitmapArrowGreenUp : mBitmapArrowRedUp;
-    //    final int cellWidth = mRingWidth;
-    //    final int cellHeight = mRingHeight;
-    //
-    //    // the up arrow bitmap is at 12:00, so find the rotation from x axis and add 90 degrees.
-    //    final float theta = (float) Math.atan2(
-    //            (double) (endRow - startRow), (double) (endColumn - startColumn));
-    //    final float angle = (float) Math.toDegrees(theta) + 90.0f;
-    //
-    //    // compose matrix
-    //    float sx = Math.min(mSquareWidth / mRingWidth, 1.0f);
-    //    float sy = Math.min(mSquareHeight / mRingHeight, 1.0f);
-    //    mArrowMatrix.setTranslate(leftX + offsetX, topY + offsetY); // transform to cell position
-    //    mArrowMatrix.preTranslate(mRingWidth / 2, mRingHeight / 2);
-    //    mArrowMatrix.preScale(sx, sy);
-    //    mArrowMatrix.preTranslate(-mRingWidth / 2, -mRingHeight / 2);
-    //    mArrowMatrix.preRotate(angle, cellWidth / 2.0f, cellHeight / 2.0f);  // rotate about cell center
-    //    mArrowMatrix.preTranslate((cellWidth - arrow.getWidth()) / 2.0f, 0.0f); // translate to 12:00 pos
-    //    canvas.drawBitmap(arrow, mArrowMatrix, mPaint);
-    //}
-
-
     /**
-     * @param canvas
-     * @param leftX
-     * @param topY
-     * @param partOfPattern Whether this circle is part of the pattern.
+     * @return the committed content, redrawn if it changed, or null if the
+     * view is empty.
      */
-    private void drawCircle(Canvas canvas, int leftX, int topY, boolean partOfPattern, int i, int j) {
-
-
-        final int width = mRingWidth;
-        final int height = mRingHeight;
+    private Bitmap getCommittedLayer() {
+        final int ringRadius = mLockPatternHelper.getIdleRing().getBoundRadius();
+        final LockPatternGridLayer layer = mCommittedLayer;
+        if (mCommittedDirty || !layer.isValid(getWidth(), getHeight(), getPaddingLeft(),
+                getPaddingTop(), getPaddingRight(), getPaddingBottom(), ringRadius)) {
+            final Canvas canvas = layer.begin(getWidth(), getHeight(), getPaddingLeft(),
+                    getPaddingTop(), getPaddingRight(), getPaddingBottom(), ringRadius);
+            if (canvas == null) {
+                return null;
+            }
+            drawCommitted(canvas);
+            mCommittedDirty = false;
+        }
+        return layer.getBitmap();
+    }
 
-        final float squareWidth = mSquareWidth;
-        final float squareHeight = mSquareHeight;
+    /**
+     * @return the idle grid, rebuilt if the size, padding or ring size changed,
+     * or null if the view is empty.
+     */
+    private Bitmap getGridLayer() {
+        final LockPatternRing idleRing = mLockPatternHelper.getIdleRing();
+        final int width = getWidth();
+        final int height = getHeight();
+        final int ringRadius = idleRing.getBoundRadius();
+        final LockPatternGridLayer layer = mGridLayer;
+        if (!layer.isValid(width, height, getPaddingLeft(), getPaddingTop(),
+                getPaddingRight(), getPaddingBottom(), ringRadius)) {
+            final Canvas canvas = layer.begin(width, height, getPaddingLeft(), getPaddingTop(),
+                    getPaddingRight(), getPaddingBottom(), ringRadius);
+            if (canvas == null) {
+                return null;
+            }
+            for (int i = 0; i < mGridSize; i++) {
+                final float centerY = getCenterYForRow(i);
+                for (int j = 0; j < mGridSize; j++) {
+                    idleRing.drawRing(canvas, getCenterXForColumn(j), centerY, 0);
+                }
+            }
+        }
+        return layer.getBitmap();
+    }
 
-        int offsetX = (int) ((squareWidth - width) / 2f);
-        int offsetY = (int) ((squareHeight - height) / 2f);
+    private void drawCircle(Canvas canvas, float centerX, float centerY, boolean partOfPattern, int i, int j, long frameTime) {
+        final LockPatternRing ring = mLockPatternHelper.getRing(i, j);
 
-        mLockPatternHelper.getLockPatternRings()[i][j].drawRing(canvas, leftX + width / 2 + offsetX, topY + height / 2 + offsetY);
+        // animation frames only invalidate the rings that changed, skip the rest
+        final int radius = ring.getBoundRadius();
+        if (canvas.quickReject(centerX - radius, centerY - radius, centerX + radius, centerY + radius,
+                Canvas.EdgeType.AA)) {
+            return;
+        }
+        if (mRingAtlas != null) {
+            mRingAtlas.drawRing(canvas, ring, centerX, centerY, frameTime);
+        } else {
+            ring.drawRing(canvas, centerX, centerY, frameTime);
+        }
+        mRingsDrawn++;
     }
 
 
@@ -1017,7 +1444,7 @@ public class LockPatternView extends View {
     protected Parcelable onSaveInstanceState() {
         Parcelable superState = super.onSaveInstanceState();
         return new SavedState(superState,
-                patternToString(mPattern),
+                patternToString(mPattern, mGridSize),
                 mPatternDisplayMode.ordinal(),
                 mInputEnabled, mInStealthMode, mEnableHapticFeedback);
     }
@@ -1026,9 +1453,14 @@ public class LockPatternView extends View {
     protected void onRestoreInstanceState(Parcelable state) {
         final SavedState ss = (SavedState) state;
         super.onRestoreInstanceState(ss.getSuperState());
-        setPattern(
-                DisplayMode.Correct,
-                stringToPattern(ss.getSerializedPattern()));
+        List<Cell> pattern;
+        try {
+            pattern = stringToPattern(ss.getSerializedPattern(), mGridSize);
+        } catch (IllegalArgumentException e) {
+            // saved by a view with a larger grid
+            pattern = Collections.emptyList();
+        }
+        setPattern(DisplayMode.Correct, pattern);
         mPatternDisplayMode = DisplayMode.values()[ss.getDisplayMode()];
         mInputEnabled = ss.isInputEnabled();
         mInStealthMode = ss.isInStealthMode();
@@ -1037,40 +1469,37 @@ public class LockPatternView extends View {
 
 
     /**
-     * Deserialize a pattern.
+     * Deserialize a pattern of the default 3 X 3 grid.
      *
      * @param string The pattern serialized with {@link #patternToString}
      * @return The pattern.
      */
-    public static List<LockPatternView.Cell> stringToPattern(String string) {
-        List<LockPatternView.Cell> result = new ArrayList<LockPatternView.Cell>();
+    public static List<Cell> stringToPattern(String string) {
+        return LockPatternCode.stringToPattern(string, DEFAULT_GRID_SIZE);
+    }
 
-        final byte[] bytes = string.getBytes();
-        for (int i = 0; i < bytes.length; i++) {
-            byte b = bytes[i];
-            result.add(LockPatternView.Cell.of(b / 3, b % 3));
-        }
-        return result;
+    /**
+     * @see LockPatternCode#stringToPattern(String, int)
+     */
+    public static List<Cell> stringToPattern(String string, int gridSize) {
+        return LockPatternCode.stringToPattern(string, gridSize);
     }
 
     /**
-     * Serialize a pattern.
+     * Serialize a pattern of the default 3 X 3 grid.
      *
      * @param pattern The pattern.
      * @return The pattern in string form.
      */
-    public static String patternToString(List<LockPatternView.Cell> pattern) {
-        if (pattern == null) {
-            return "";
-        }
-        final int patternSize = pattern.size();
+    public static String patternToString(List<Cell> pattern) {
+        return LockPatternCode.patternToString(pattern, DEFAULT_GRID_SIZE);
+    }
 
-        byte[] res = new byte[patternSize];
-        for (int i = 0; i < patternSize; i++) {
-            LockPatternView.Cell cell = pattern.get(i);
-            res[i] = (byte) (cell.getRow() * 3 + cell.getColumn());
-        }
-        return new String(res);
+    /**
+     * @see LockPatternCode#patternToString(List, int)
+     */
+    public static String patternToString(List<Cell> pattern, int gridSize) {
+        return LockPatternCode.patternToString(pattern, gridSize);
     }
 
 
@@ -0,0 +1,108 @@
+package com.gusturelock2;
+
+import android.content.Intent;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import widget.LockPatternStore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The order of the startup work of a launch with a pattern set: the lock
+ * screen is started before anything is inflated, the main layout only once
+ * the user is back from it, and the pattern file is read once.
+ */
+public class MainActivityStartupTest {
+
+    private static final String PLAIN = "\u0000\u0001\u0002\u0005\u0008";
+    private static final String START_LOCK = "start lock screen";
+    private static final String INFLATE_MAIN = "inflate main layout";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private LockPatternStore mStore;
+
+    /**
+     * Records what {@link MainActivity} starts and inflates, with its files in
+     * the temporary folder.
+     */
+    private class StartupActivity extends MainActivity {
+        final List<String> mWork = new ArrayList<String>();
+
+        @Override
+        public File getFilesDir() {
+            return mFolder.getRoot();
+        }
+
+        @Override
+        public void setContentView(int layoutResID) {
+            mWork.add(layoutResID == R.layout.activity_main ? INFLATE_MAIN : "inflate " + layoutResID);
+        }
+
+        @Override
+        public void startActivityForResult(Intent intent, int requestCode) {
+            mWork.add(requestCode == REQUEST_UNLOCK ? START_LOCK : "start " + requestCode);
+        }
+    }
+
+    private File getPatternFile() {
+        return new File(mFolder.getRoot(), MainActivity.PATTERN_FILE);
+    }
+
+    /**
+     * @return an activity launched on a stored pattern that is not cached yet,
+     * as on a cold start.
+     */
+    private StartupActivity launchLocked() throws Exception {
+        final LockPatternStore store = LockPatternStore.open(getPatternFile());
+        store.setStoredPattern(PLAIN);
+        store.flush();
+        store.close();
+
+        final StartupActivity activity = new StartupActivity();
+        activity.onCreate(null);
+        mStore = MainActivity.getPatternStore(activity);
+        return activity;
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (mStore != null) {
+            mStore.close();
+        }
+    }
+
+    @Test
+    public void lockedLaunchStartsTheLockScreenWithoutInflating() throws Exception {
+        final StartupActivity activity = launchLocked();
+        assertEquals(Arrays.asList(START_LOCK), activity.mWork);
+    }
+
+    @Test
+    public void mainLayoutIsInflatedOnceBackFromTheLockScreen() throws Exception {
+        final StartupActivity activity = launchLocked();
+        activity.onActivityResult(MainActivity.REQUEST_UNLOCK, MainActivity.RESULT_OK, null);
+        activity.onActivityResult(MainActivity.REQUEST_UNLOCK, MainActivity.RESULT_OK, null);
+        assertEquals(Arrays.asList(START_LOCK, INFLATE_MAIN), activity.mWork);
+    }
+
+    @Test
+    public void lockScreenReusesThePatternReadAtLaunch() throws Exception {
+        final StartupActivity activity = launchLocked();
+        assertTrue(getPatternFile().delete());
+
+        // what LockActivity reads in its onCreate, from memory
+        final LockPatternStore store = MainActivity.getPatternStore(activity);
+        assertSame(mStore, store);
+        assertEquals(PLAIN, store.getStoredPattern());
+    }
+}
@@ -0,0 +1,58 @@
+package widget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LockPatternRingTest {
+
+    private static LockPatternRing newRing() {
+        return new LockPatternRing(6, 2, 44);
+    }
+
+    @Test
+    public void drawingReusesThePaints() {
+        final LockPatternRing ring = newRing();
+        final RecordingCanvas canvas = new RecordingCanvas();
+        ring.drawRing(canvas, 0, 0, 0);
+        final int paints = canvas.getPaintCount();
+
+        ring.downAnim(1000);
+        for (long frameTime = 1000; frameTime < 1000 + 3 * LockPatternRing.RING_ANIM_DURATION; frameTime += 16) {
+            ring.onAnimationFrame(frameTime);
+            ring.drawRing(canvas, 10, 10, frameTime);
+        }
+        ring.doError();
+        ring.drawRing(canvas, 10, 10, 5000);
+        ring.resetRing();
+        ring.drawRing(canvas, 10, 10, 6000);
+
+        assertEquals(3, paints);
+        assertEquals(paints, canvas.getPaintCount());
+    }
+
+    @Test
+    public void ringsOfAStyleShareItsPaints() {
+        final LockPatternRing style = newRing();
+        final RecordingCanvas canvas = new RecordingCanvas();
+        style.drawRing(canvas, 0, 0, 0);
+        for (int i = 0; i < 9; i++) {
+            // what the helper does on the first hit of a cell
+            final LockPatternRing ring = new LockPatternRing(style);
+            ring.downAnim(i * 100);
+            ring.drawRing(canvas, i, i, i * 100 + 50);
+        }
+        assertEquals(3, canvas.getPaintCount());
+    }
+
+    @Test
+    public void spritesReuseThePaints() {
+        final LockPatternRing ring = newRing();
+        final RecordingCanvas canvas = new RecordingCanvas();
+        for (int sprite = 0; sprite < LockPatternRing.SPRITE_COUNT; sprite++) {
+            ring.drawSprite(canvas, 0, 0, sprite);
+        }
+        assertEquals(3 * LockPatternRing.SPRITE_COUNT, canvas.getCircleCount());
+        assertEquals(3, canvas.getPaintCount());
+    }
+}
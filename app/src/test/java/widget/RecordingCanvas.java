@@ -0,0 +1,33 @@
+package widget;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Canvas that draws nothing and remembers which paints it was handed, so a
+ * test can tell whether drawing allocates new ones.
+ */
+class RecordingCanvas extends Canvas {
+
+    private final IdentityHashMap<Paint, Boolean> mPaints = new IdentityHashMap<Paint, Boolean>();
+    private int mCircles;
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, Paint paint) {
+        mCircles++;
+        mPaints.put(paint, Boolean.TRUE);
+    }
+
+    /**
+     * @return the number of distinct paint instances drawn with.
+     */
+    int getPaintCount() {
+        return mPaints.size();
+    }
+
+    int getCircleCount() {
+        return mCircles;
+    }
+}
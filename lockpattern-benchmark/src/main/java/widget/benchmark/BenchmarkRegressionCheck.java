@@ -0,0 +1,152 @@
+package widget.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares a JMH JSON result file ({@code -rf json}) against a baseline one and
+ * fails when a benchmark got slower by more than a threshold.
+ * <p/>
+ * Usage: {@code BenchmarkRegressionCheck <results.json> <baseline.json> [threshold]},
+ * the threshold being the allowed slowdown as a fraction (default 0.2 = 20%).
+ * Scores are times per operation, so higher is worse. A benchmark only counts
+ * as slower when, on top of the threshold, the 99.9% confidence intervals
+ * ({@code score +- scoreError}) of both runs do not overlap, so run to run
+ * noise is not reported. Baselines are only comparable when recorded on the
+ * same machine: if the baseline file does not exist the results are copied
+ * there and nothing is checked. Exits with 1 on a regression and 2 on bad
+ * input.
+ */
+public class BenchmarkRegressionCheck {
+
+    private static final double DEFAULT_THRESHOLD = 0.2;
+
+    // "benchmark" : "widget.benchmark.X.y", ..."params" : {...}, ..."primaryMetric" : { "score" : 1.23, "scoreError" : 0.1
+    private static final Pattern BENCHMARK = Pattern.compile(
+            "\"benchmark\"\\s*:\\s*\"([^\"]+)\"(.*?)\"primaryMetric\"\\s*:\\s*\\{\\s*"
+                    + "\"score\"\\s*:\\s*([-0-9.eE+]+|\"NaN\")\\s*,\\s*"
+                    + "\"scoreError\"\\s*:\\s*([-0-9.eE+]+|\"NaN\")",
+            Pattern.DOTALL);
+    private static final Pattern PARAMS = Pattern.compile("\"params\"\\s*:\\s*\\{([^}]*)\\}");
+    private static final Pattern PARAM = Pattern.compile("\"([^\"]+)\"\\s*:\\s*\"([^\"]*)\"");
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: BenchmarkRegressionCheck <results.json> <baseline.json> [threshold]");
+            System.exit(2);
+        }
+        final Map<String, double[]> results;
+        final Map<String, double[]> baseline;
+        try {
+            if (!new File(args[1]).exists()) {
+                copy(args[0], args[1]);
+                System.out.println("no baseline, recorded these results as " + args[1]);
+                return;
+            }
+            results = read(args[0]);
+            baseline = read(args[1]);
+        } catch (IOException e) {
+            System.err.println("cannot read results: " + e);
+            System.exit(2);
+            return;
+        }
+        final double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+
+        int regressions = 0;
+        for (Map.Entry<String, double[]> entry : results.entrySet()) {
+            final double[] before = baseline.get(entry.getKey());
+            final double[] after = entry.getValue();
+            if (before == null || before[0] <= 0) {
+                System.out.println(String.format("NEW   %-70s %12.3f +- %-10.3f",
+                        entry.getKey(), after[0], after[1]));
+                continue;
+            }
+            final boolean regressed = isRegression(before, after, threshold);
+            if (regressed) {
+                regressions++;
+            }
+            System.out.println(String.format("%-5s %-70s %12.3f +- %-10.3f -> %12.3f +- %-10.3f (%+.1f%%)",
+                    regressed ? "SLOW" : "OK", entry.getKey(), before[0], before[1], after[0], after[1],
+                    (after[0] / before[0] - 1) * 100));
+        }
+        if (regressions > 0) {
+            System.err.println(regressions + " benchmark(s) regressed by more than "
+                    + Math.round(threshold * 100) + "%");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param before {score, scoreError} of the baseline.
+     * @param after  {score, scoreError} of the new run.
+     * @return whether {@code after} is slower by more than {@code threshold}
+     * and its confidence interval lies wholly above that of {@code before}.
+     */
+    static boolean isRegression(double[] before, double[] after, double threshold) {
+        return after[0] / before[0] - 1 > threshold && after[0] - after[1] > before[0] + before[1];
+    }
+
+    /**
+     * @return {score, scoreError} of every benchmark in a JMH JSON result file,
+     * keyed by benchmark name and parameters; an unknown error is 0.
+     */
+    static Map<String, double[]> read(String file) throws IOException {
+        final Map<String, double[]> scores = new LinkedHashMap<String, double[]>();
+        final Matcher matcher = BENCHMARK.matcher(readFully(file));
+        while (matcher.find()) {
+            final StringBuilder key = new StringBuilder(matcher.group(1));
+            final Matcher params = PARAMS.matcher(matcher.group(2));
+            if (params.find()) {
+                final Matcher param = PARAM.matcher(params.group(1));
+                while (param.find()) {
+                    key.append(' ').append(param.group(1)).append('=').append(param.group(2));
+                }
+            }
+            final double error = parse(matcher.group(4));
+            scores.put(key.toString(), new double[]{parse(matcher.group(3)), Double.isNaN(error) ? 0 : error});
+        }
+        return scores;
+    }
+
+    private static double parse(String number) {
+        return number.startsWith("\"") ? Double.NaN : Double.parseDouble(number);
+    }
+
+    private static String readFully(String file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void copy(String from, String to) throws IOException {
+        final byte[] bytes = readFully(from).getBytes("UTF-8");
+        final File parent = new File(to).getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        final OutputStream out = new FileOutputStream(to);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
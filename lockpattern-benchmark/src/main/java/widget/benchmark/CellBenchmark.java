@@ -0,0 +1,36 @@
+package widget.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import widget.Cell;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Cell#of} over every cell of the largest grid.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class CellBenchmark {
+
+    @Benchmark
+    public void cellOf(Blackhole blackhole) {
+        for (int row = 0; row < Cell.MAX_GRID_SIZE; row++) {
+            for (int column = 0; column < Cell.MAX_GRID_SIZE; column++) {
+                blackhole.consume(Cell.of(row, column));
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package widget.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import widget.Cell;
+import widget.LockPatternEngine;
+import widget.LockPatternGapTable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row / column hit detection of {@link LockPatternEngine#checkForNewHit}, the
+ * segment sweep of a drag whose samples jump across whole rows of cells, and
+ * the {@link LockPatternGapTable} walk that fills gaps between two cells.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class HitTestBenchmark {
+
+    private static final int SAMPLES = 256;
+
+    @Param({"3", "10"})
+    public int gridSize;
+
+    private LockPatternEngine mEngine;
+    private float[] mSamples;
+    private float[] mJumps;
+    private LockPatternGapTable mGapTable;
+    private int[] mPairs;
+
+    @Setup
+    public void setUp() {
+        mEngine = Patterns.newEngine(gridSize);
+        mSamples = Patterns.samples(SAMPLES);
+
+        // corner to corner and along the edges, so every step skips cells
+        final int last = gridSize - 1;
+        final int[] cells = {0, 0, last, last, 0, last, last, 0, last, last / 2};
+        mJumps = new float[cells.length];
+        for (int i = 0; i < cells.length; i += 2) {
+            mJumps[i] = mEngine.getCenterXForColumn(cells[i + 1]);
+            mJumps[i + 1] = mEngine.getCenterYForRow(cells[i]);
+        }
+
+        // the same jumps as cell pairs, each of which has a gap to fill
+        mGapTable = LockPatternGapTable.forGridSize(gridSize);
+        mPairs = new int[cells.length / 2 - 1];
+        for (int i = 0; i < mPairs.length; i++) {
+            mPairs[i] = mGapTable.pairIndex(Cell.of(cells[2 * i], cells[2 * i + 1]),
+                    Cell.of(cells[2 * i + 2], cells[2 * i + 3]));
+        }
+    }
+
+    /**
+     * One hit test per sample, on an empty pattern.
+     */
+    @Benchmark
+    public void checkForNewHit(Blackhole blackhole) {
+        final LockPatternEngine engine = mEngine;
+        final float[] samples = mSamples;
+        for (int i = 0; i < samples.length; i += 2) {
+            blackhole.consume(engine.checkForNewHit(samples[i], samples[i + 1]));
+        }
+    }
+
+    /**
+     * A whole gesture whose moves each sweep across the cells between two far
+     * apart cells.
+     */
+    @Benchmark
+    public int sweepJumps() {
+        final LockPatternEngine engine = mEngine;
+        final float[] jumps = mJumps;
+        engine.onDown(jumps[0], jumps[1], 0);
+        for (int i = 2; i < jumps.length; i += 2) {
+            engine.onMove(jumps[i], jumps[i + 1], i);
+        }
+        engine.onUp(jumps[jumps.length - 2], jumps[jumps.length - 1], jumps.length);
+        return engine.getPattern().size();
+    }
+
+    /**
+     * The gap table lookups of the same jumps, without the sweep around them.
+     */
+    @Benchmark
+    public void gapTableWalk(Blackhole blackhole) {
+        final LockPatternGapTable gapTable = mGapTable;
+        final int[] pairs = mPairs;
+        for (int pair : pairs) {
+            for (int i = gapTable.start(pair), end = gapTable.start(pair + 1); i < end; i++) {
+                blackhole.consume(gapTable.cell(i));
+            }
+        }
+    }
+}
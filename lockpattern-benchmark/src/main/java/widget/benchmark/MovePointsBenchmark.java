@@ -0,0 +1,58 @@
+package widget.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import widget.Cell;
+import widget.LockMovePoint;
+import widget.LockPatternEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the segments of the error animation, the work
+ * {@code LockPatternHelper.getPaths} does when a wrong pattern is shown.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class MovePointsBenchmark {
+
+    @Param({"3", "10"})
+    public int gridSize;
+
+    private LockPatternEngine mEngine;
+    private List<Cell> mPattern;
+    private boolean[][] mDrawLookup;
+    private final ArrayList<LockMovePoint> mPoints = new ArrayList<LockMovePoint>();
+    private final ArrayList<Cell> mCells = new ArrayList<Cell>();
+
+    @Setup
+    public void setUp() {
+        mEngine = Patterns.newEngine(gridSize);
+        mPattern = Patterns.snake(gridSize);
+        mDrawLookup = new boolean[gridSize][gridSize];
+        for (Cell cell : mPattern) {
+            mDrawLookup[cell.getRow()][cell.getColumn()] = true;
+        }
+    }
+
+    @Benchmark
+    public int buildMovePoints() {
+        mEngine.buildMovePoints(mPattern, mDrawLookup, mPoints, mCells);
+        return mPoints.size();
+    }
+}
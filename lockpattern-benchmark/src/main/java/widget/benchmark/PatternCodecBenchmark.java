@@ -0,0 +1,62 @@
+package widget.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import widget.Cell;
+import widget.LockPatternCode;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing patterns to and from the stored string form.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class PatternCodecBenchmark {
+
+    @Param({"3", "10"})
+    public int gridSize;
+
+    private List<Cell> mPattern;
+    private String mString;
+
+    @Setup
+    public void setUp() {
+        mPattern = Patterns.snake(gridSize);
+        mString = LockPatternCode.patternToString(mPattern, gridSize);
+    }
+
+    @Benchmark
+    public String patternToString() {
+        return LockPatternCode.patternToString(mPattern, gridSize);
+    }
+
+    @Benchmark
+    public List<Cell> stringToPattern() {
+        return LockPatternCode.stringToPattern(mString, gridSize);
+    }
+
+    @Benchmark
+    public LockPatternCode codeOf() {
+        return LockPatternCode.of(mPattern, gridSize);
+    }
+
+    @Benchmark
+    public LockPatternCode codeFromString() {
+        return LockPatternCode.fromString(mString, gridSize);
+    }
+}
@@ -0,0 +1,63 @@
+package widget.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import widget.Cell;
+import widget.LockPatternCode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checking a drawn pattern against the stored one, equal patterns being the
+ * worst case.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class PatternEqualityBenchmark {
+
+    @Param({"3", "10"})
+    public int gridSize;
+
+    private List<Cell> mPattern;
+    private List<Cell> mOther;
+    private LockPatternCode mCode;
+    private LockPatternCode mOtherCode;
+
+    @Setup
+    public void setUp() {
+        mPattern = Patterns.snake(gridSize);
+        mOther = new ArrayList<Cell>(mPattern);
+        mCode = LockPatternCode.of(mPattern, gridSize);
+        mOtherCode = LockPatternCode.of(mOther, gridSize);
+    }
+
+    @Benchmark
+    public boolean listEquals() {
+        return mPattern.equals(mOther);
+    }
+
+    @Benchmark
+    public boolean codeMatches() {
+        return mCode.matches(mOther);
+    }
+
+    @Benchmark
+    public boolean codeEquals() {
+        return mCode.equals(mOtherCode);
+    }
+}
@@ -0,0 +1,56 @@
+package widget.benchmark;
+
+import widget.Cell;
+import widget.LockPatternEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inputs shared by the benchmarks.
+ */
+final class Patterns {
+
+    /**
+     * Side of the square grid the engines are laid out on, in pixels.
+     */
+    static final float GRID_PIXELS = 900f;
+    static final float HIT_FACTOR = 0.41f;
+
+    private Patterns() {
+    }
+
+    static LockPatternEngine newEngine(int gridSize) {
+        LockPatternEngine engine = new LockPatternEngine(gridSize);
+        engine.setGeometry(0, 0, GRID_PIXELS, GRID_PIXELS, HIT_FACTOR);
+        return engine;
+    }
+
+    /**
+     * @return a pattern through every cell of the grid, row by row in a snake,
+     * so it is the longest pattern possible and has no gaps.
+     */
+    static List<Cell> snake(int gridSize) {
+        List<Cell> pattern = new ArrayList<Cell>(gridSize * gridSize);
+        for (int row = 0; row < gridSize; row++) {
+            for (int i = 0; i < gridSize; i++) {
+                pattern.add(Cell.of(row, row % 2 == 0 ? i : gridSize - 1 - i));
+            }
+        }
+        return pattern;
+    }
+
+    /**
+     * @return {@code count} (x, y) pairs spread over the grid, on and off the
+     * hit zones, from a fixed seed.
+     */
+    static float[] samples(int count) {
+        float[] samples = new float[count * 2];
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < samples.length; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            samples[i] = (seed >>> 40) * GRID_PIXELS / (1 << 24);
+        }
+        return samples;
+    }
+}
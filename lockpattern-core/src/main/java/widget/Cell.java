@@ -0,0 +1,65 @@
+package widget;
+
+/**
+ * Represents a cell in the N X N matrix of the unlock pattern view.
+ */
+public class Cell {
+    /**
+     * The largest grid a pattern view supports.
+     */
+    public static final int MAX_GRID_SIZE = 10;
+
+    int row;
+    int column;
+
+    // keep # objects limited to MAX_GRID_SIZE * MAX_GRID_SIZE
+    static Cell[][] sCells = new Cell[MAX_GRID_SIZE][MAX_GRID_SIZE];
+
+    static {
+        for (int i = 0; i < MAX_GRID_SIZE; i++) {
+            for (int j = 0; j < MAX_GRID_SIZE; j++) {
+                sCells[i][j] = new Cell(i, j);
+            }
+        }
+    }
+
+    /**
+     * @param row    The row of the cell.
+     * @param column The column of the cell.
+     */
+    private Cell(int row, int column) {
+        checkRange(row, column);
+        this.row = row;
+        this.column = column;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @param row    The row of the cell.
+     * @param column The column of the cell.
+     */
+    public static Cell of(int row, int column) {
+        checkRange(row, column);
+        return sCells[row][column];
+    }
+
+    private static void checkRange(int row, int column) {
+        if (row < 0 || row >= MAX_GRID_SIZE) {
+            throw new IllegalArgumentException("row must be in range 0-" + (MAX_GRID_SIZE - 1));
+        }
+        if (column < 0 || column >= MAX_GRID_SIZE) {
+            throw new IllegalArgumentException("column must be in range 0-" + (MAX_GRID_SIZE - 1));
+        }
+    }
+
+    public String toString() {
+        return "(row=" + row + ",clmn=" + column + ")";
+    }
+}
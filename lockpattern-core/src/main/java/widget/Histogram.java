@@ -0,0 +1,148 @@
+package widget;
+
+import java.util.Arrays;
+
+/**
+ * Counts values into fixed buckets. Recording never allocates, so it is cheap
+ * enough to run on every frame or touch event of a production build.
+ * <p/>
+ * Bucket {@code i} holds the values up to and including its upper bound and
+ * above the bound of bucket {@code i - 1}; one more bucket holds everything
+ * above the last bound. Not thread safe.
+ */
+public class Histogram {
+
+    private final long[] mBounds;
+    private final long[] mCounts;
+    private long mCount;
+    private long mSum;
+    private long mMax;
+
+    /**
+     * @param bounds The upper bounds of the buckets, ascending.
+     */
+    public Histogram(long... bounds) {
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("bounds must be ascending");
+            }
+        }
+        mBounds = bounds.clone();
+        mCounts = new long[bounds.length + 1];
+    }
+
+    /**
+     * @return a histogram whose bounds start at {@code first} and double
+     * {@code count - 1} times.
+     */
+    public static Histogram exponential(long first, int count) {
+        final long[] bounds = new long[count];
+        for (int i = 0; i < count; i++) {
+            bounds[i] = first << i;
+        }
+        return new Histogram(bounds);
+    }
+
+    /**
+     * @return a new histogram with the same buckets and no values.
+     */
+    public Histogram newEmpty() {
+        return new Histogram(mBounds);
+    }
+
+    public void record(long value) {
+        final long[] bounds = mBounds;
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket]) {
+            bucket++;
+        }
+        mCounts[bucket]++;
+        mCount++;
+        mSum += value;
+        if (value > mMax || mCount == 1) {
+            mMax = value;
+        }
+    }
+
+    public void reset() {
+        Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mSum = 0;
+        mMax = 0;
+    }
+
+    /**
+     * Copies the values into {@code snapshot}, which must have the same buckets
+     * (see {@link #newEmpty()}).
+     */
+    public void copyTo(Histogram snapshot) {
+        if (!Arrays.equals(mBounds, snapshot.mBounds)) {
+            throw new IllegalArgumentException("different buckets");
+        }
+        System.arraycopy(mCounts, 0, snapshot.mCounts, 0, mCounts.length);
+        snapshot.mCount = mCount;
+        snapshot.mSum = mSum;
+        snapshot.mMax = mMax;
+    }
+
+    /**
+     * @return the number of buckets, including the one above the last bound.
+     */
+    public int getBucketCount() {
+        return mCounts.length;
+    }
+
+    /**
+     * @return the upper bound of {@code bucket}, {@link Long#MAX_VALUE} for the
+     * last one.
+     */
+    public long getBucketBound(int bucket) {
+        return bucket < mBounds.length ? mBounds[bucket] : Long.MAX_VALUE;
+    }
+
+    public long getBucketValueCount(int bucket) {
+        return mCounts[bucket];
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getSum() {
+        return mSum;
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    public long getMean() {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    /**
+     * @param percentile 0 to 100.
+     * @return the upper bound of the bucket the value at {@code percentile}
+     * falls in, at most the largest value recorded; 0 if there are no values.
+     */
+    public long getPercentile(int percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (mCount * percentile + 99) / 100);
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.min(getBucketBound(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + mCount + " mean=" + getMean() + " p50=" + getPercentile(50)
+                + " p90=" + getPercentile(90) + " p99=" + getPercentile(99) + " max=" + mMax;
+    }
+}
@@ -0,0 +1,249 @@
+package widget;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable packed form of a pattern.
+ * <p/>
+ * Grids of up to 4 X 4 keep the whole pattern in one {@code long} of 4-bit
+ * cell indices, so equality and hashing are constant time. Larger grids use
+ * one byte per cell in a small {@code long[]}. Reading cells back never
+ * allocates, and {@link #toPatternString()} / {@link #fromString(String, int)}
+ * round-trip losslessly with {@link #patternToString(List, int)}.
+ */
+public final class LockPatternCode {
+
+    private static final int COMPACT_BITS = 4;
+    private static final int COMPACT_MAX_CELLS = 64 / COMPACT_BITS;
+    private static final int WIDE_BITS = 8;
+    private static final int WIDE_CELLS_PER_WORD = 64 / WIDE_BITS;
+
+    private final int mGridSize;
+    private final int mLength;
+    /**
+     * Compact form: cell {@code i} is stored in bits {@code 4i..4i+3}.
+     */
+    private final long mBits;
+    /**
+     * Wide form, {@code null} for compact codes: cell {@code i} is stored in
+     * byte {@code i % 8} of word {@code i / 8}.
+     */
+    private final long[] mWords;
+    private final int mHash;
+
+    private LockPatternCode(int gridSize, int length, long bits, long[] words) {
+        mGridSize = gridSize;
+        mLength = length;
+        mBits = bits;
+        mWords = words;
+        int hash = 31 * gridSize + length;
+        hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+        if (words != null) {
+            hash = 31 * hash + Arrays.hashCode(words);
+        }
+        mHash = hash;
+    }
+
+    private static boolean isCompact(int gridSize) {
+        return gridSize * gridSize <= COMPACT_MAX_CELLS;
+    }
+
+    private static void checkGridSize(int gridSize) {
+        if (gridSize < 1 || gridSize > Cell.MAX_GRID_SIZE) {
+            throw new IllegalArgumentException("gridSize must be in range 1-" + Cell.MAX_GRID_SIZE);
+        }
+    }
+
+    /**
+     * @param pattern  The pattern.
+     * @param gridSize The grid size of the view the pattern was drawn on.
+     */
+    public static LockPatternCode of(List<Cell> pattern, int gridSize) {
+        checkGridSize(gridSize);
+        final int length = pattern.size();
+        if (isCompact(gridSize)) {
+            if (length > COMPACT_MAX_CELLS) {
+                throw new IllegalArgumentException("pattern too long for grid size " + gridSize);
+            }
+            long bits = 0;
+            for (int i = 0; i < length; i++) {
+                Cell cell = pattern.get(i);
+                bits |= (long) (cell.row * gridSize + cell.column) << (i * COMPACT_BITS);
+            }
+            return new LockPatternCode(gridSize, length, bits, null);
+        }
+        long[] words = new long[(length + WIDE_CELLS_PER_WORD - 1) / WIDE_CELLS_PER_WORD];
+        for (int i = 0; i < length; i++) {
+            Cell cell = pattern.get(i);
+            words[i / WIDE_CELLS_PER_WORD] |= (long) (cell.row * gridSize + cell.column)
+                    << ((i % WIDE_CELLS_PER_WORD) * WIDE_BITS);
+        }
+        return new LockPatternCode(gridSize, length, 0, words);
+    }
+
+    /**
+     * Decode the stored string form, see {@link #patternToString(List, int)}.
+     */
+    public static LockPatternCode fromString(String string, int gridSize) {
+        checkGridSize(gridSize);
+        final int length = string.length();
+        final int cellCount = gridSize * gridSize;
+        long bits = 0;
+        long[] words = isCompact(gridSize)
+                ? null : new long[(length + WIDE_CELLS_PER_WORD - 1) / WIDE_CELLS_PER_WORD];
+        for (int i = 0; i < length; i++) {
+            final int index = string.charAt(i);
+            if (index >= cellCount) {
+                throw new IllegalArgumentException("cell " + index + " out of range for grid size " + gridSize);
+            }
+            if (words == null) {
+                if (i >= COMPACT_MAX_CELLS) {
+                    throw new IllegalArgumentException("pattern too long for grid size " + gridSize);
+                }
+                bits |= (long) index << (i * COMPACT_BITS);
+            } else {
+                words[i / WIDE_CELLS_PER_WORD] |= (long) index << ((i % WIDE_CELLS_PER_WORD) * WIDE_BITS);
+            }
+        }
+        return new LockPatternCode(gridSize, length, bits, words);
+    }
+
+    /**
+     * Deserialize a pattern.
+     *
+     * @param string   The pattern serialized with {@link #patternToString(List, int)}
+     * @param gridSize The grid size the pattern was serialized with.
+     * @return The pattern.
+     * @throws IllegalArgumentException if a cell is outside the grid, e.g. the
+     *                                  string was serialized with a larger one.
+     */
+    public static List<Cell> stringToPattern(String string, int gridSize) {
+        checkGridSize(gridSize);
+        final int length = string.length();
+        final int cellCount = gridSize * gridSize;
+        List<Cell> result = new ArrayList<Cell>(length);
+        for (int i = 0; i < length; i++) {
+            final int index = string.charAt(i);
+            if (index >= cellCount) {
+                throw new IllegalArgumentException("cell " + index + " out of range for grid size " + gridSize);
+            }
+            result.add(Cell.of(index / gridSize, index % gridSize));
+        }
+        return result;
+    }
+
+    /**
+     * Serialize a pattern. Each cell is stored as one char of value
+     * {@code row * gridSize + column}, which is the same string the former
+     * byte encoding produced since every index is below 128.
+     *
+     * @param pattern  The pattern.
+     * @param gridSize The grid size of the view the pattern was drawn on.
+     * @return The pattern in string form.
+     */
+    public static String patternToString(List<Cell> pattern, int gridSize) {
+        if (pattern == null) {
+            return "";
+        }
+        final int patternSize = pattern.size();
+
+        char[] res = new char[patternSize];
+        for (int i = 0; i < patternSize; i++) {
+            Cell cell = pattern.get(i);
+            res[i] = (char) (cell.getRow() * gridSize + cell.getColumn());
+        }
+        return new String(res);
+    }
+
+    /**
+     * @return The pattern in the string form used by {@link #patternToString(List, int)}.
+     */
+    public String toPatternString() {
+        char[] chars = new char[mLength];
+        for (int i = 0; i < mLength; i++) {
+            chars[i] = (char) cellIndexAt(i);
+        }
+        return new String(chars);
+    }
+
+    public int getGridSize() {
+        return mGridSize;
+    }
+
+    public int size() {
+        return mLength;
+    }
+
+    /**
+     * @return {@code row * gridSize + column} of the cell at {@code position}.
+     */
+    public int cellIndexAt(int position) {
+        if (position < 0 || position >= mLength) {
+            throw new IndexOutOfBoundsException("position " + position + ", size " + mLength);
+        }
+        if (mWords == null) {
+            return (int) (mBits >>> (position * COMPACT_BITS)) & 0xF;
+        }
+        return (int) (mWords[position / WIDE_CELLS_PER_WORD]
+                >>> ((position % WIDE_CELLS_PER_WORD) * WIDE_BITS)) & 0xFF;
+    }
+
+    public Cell cellAt(int position) {
+        final int index = cellIndexAt(position);
+        return Cell.of(index / mGridSize, index % mGridSize);
+    }
+
+    /**
+     * Compares against a pattern without encoding it.
+     *
+     * @return whether {@code pattern} is the pattern of this code.
+     */
+    public boolean matches(List<Cell> pattern) {
+        if (pattern == null || pattern.size() != mLength) {
+            return false;
+        }
+        for (int i = 0; i < mLength; i++) {
+            Cell cell = pattern.get(i);
+            if (cell.row >= mGridSize || cell.column >= mGridSize
+                    || cell.row * mGridSize + cell.column != cellIndexAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LockPatternCode)) {
+            return false;
+        }
+        LockPatternCode other = (LockPatternCode) o;
+        return mHash == other.mHash
+                && mGridSize == other.mGridSize
+                && mLength == other.mLength
+                && mBits == other.mBits
+                && Arrays.equals(mWords, other.mWords);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("LockPatternCode[");
+        for (int i = 0; i < mLength; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(cellIndexAt(i));
+        }
+        return sb.append(']').toString();
+    }
+}
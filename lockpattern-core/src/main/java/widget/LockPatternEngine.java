@@ -0,0 +1,600 @@
+package widget;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headless input logic of a pattern view.
+ * <p/>
+ * Turns raw (x, y, t) touch samples into cells of an N X N grid: hit testing
+ * against circular hit zones, filling in skipped cells and the start / cell
+ * added / detected / cleared life cycle of a pattern. It has no Android
+ * dependencies, so {@code LockPatternView} delegates to it on the device and
+ * benchmarks or load tests drive it directly on a plain JVM.
+ */
+public class LockPatternEngine {
+
+    /**
+     * Receives the events of the engine, in the order they happen.
+     */
+    public interface Listener {
+
+        /**
+         * A new pattern has begun.
+         */
+        void onPatternStart();
+
+        /**
+         * The pattern in progress was cleared.
+         */
+        void onPatternCleared();
+
+        /**
+         * {@code cell} was appended to the pattern, either because it was hit
+         * or because it lies between the last cell and the one that was hit.
+         */
+        void onPatternCellAdded(Cell cell);
+
+        /**
+         * The pattern was completed by lifting the finger.
+         */
+        void onPatternDetected();
+    }
+
+    private final int mGridSize;
+    private final LockPatternGapTable mGapTable;
+    private final ArrayList<Cell> mPattern;
+    private final boolean[][] mPatternLookup;
+    private LockPatternCode mPatternCode;
+    private Listener mListener;
+    private boolean mPatternInProgress;
+
+    private float mLeft, mTop;
+    private float mSquareWidth, mSquareHeight;
+    private float mInvSquareWidth, mInvSquareHeight;
+    private float mHitRadiusSquared;
+
+    private float mLastX = -1, mLastY = -1;
+    private long mLastTime;
+    /**
+     * Whether a finger is down, so the last sample starts the next segment.
+     */
+    private boolean mTracking;
+    private Cell mSweepHit;
+
+    /**
+     * @param gridSize The number of rows (and columns) of the grid.
+     */
+    public LockPatternEngine(int gridSize) {
+        mGapTable = LockPatternGapTable.forGridSize(gridSize);
+        mGridSize = gridSize;
+        mPattern = new ArrayList<Cell>(gridSize * gridSize);
+        mPatternLookup = new boolean[gridSize][gridSize];
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Sets the geometry of the grid.
+     *
+     * @param left      The x of the left edge of the grid.
+     * @param top       The y of the top edge of the grid.
+     * @param width     The width of the grid.
+     * @param height    The height of the grid.
+     * @param hitFactor The diameter of the hit zone of a cell relative to the
+     *                  smaller side of the cell.
+     */
+    public void setGeometry(float left, float top, float width, float height, float hitFactor) {
+        mLeft = left;
+        mTop = top;
+        mSquareWidth = width / mGridSize;
+        mSquareHeight = height / mGridSize;
+        mInvSquareWidth = mSquareWidth > 0 ? 1f / mSquareWidth : 0f;
+        mInvSquareHeight = mSquareHeight > 0 ? 1f / mSquareHeight : 0f;
+        final float hitRadius = Math.min(mSquareWidth, mSquareHeight) * hitFactor / 2f;
+        mHitRadiusSquared = hitRadius * hitRadius;
+    }
+
+    public int getGridSize() {
+        return mGridSize;
+    }
+
+    public float getSquareWidth() {
+        return mSquareWidth;
+    }
+
+    public float getSquareHeight() {
+        return mSquareHeight;
+    }
+
+    public float getCenterXForColumn(int column) {
+        return mLeft + column * mSquareWidth + mSquareWidth / 2f;
+    }
+
+    public float getCenterYForRow(int row) {
+        return mTop + row * mSquareHeight + mSquareHeight / 2f;
+    }
+
+    /**
+     * @return The pattern so far. Owned by the engine, do not modify.
+     */
+    public List<Cell> getPattern() {
+        return mPattern;
+    }
+
+    /**
+     * @return The pattern so far in packed form.
+     */
+    public LockPatternCode getPatternCode() {
+        if (mPatternCode == null) {
+            mPatternCode = LockPatternCode.of(mPattern, mGridSize);
+        }
+        return mPatternCode;
+    }
+
+    public boolean isCellInPattern(int row, int column) {
+        return mPatternLookup[row][column];
+    }
+
+    public boolean isPatternInProgress() {
+        return mPatternInProgress;
+    }
+
+    public float getLastX() {
+        return mLastX;
+    }
+
+    public float getLastY() {
+        return mLastY;
+    }
+
+    /**
+     * @return The time of the last sample, in the time base the samples use.
+     * Inside the {@link Listener} calls it is the sample that caused the event.
+     */
+    public long getLastTime() {
+        return mLastTime;
+    }
+
+    /**
+     * Computes what a move sample changes on screen: the squares of the cells
+     * added since the pattern had {@code sizeBefore} cells, the segments to
+     * them, and the segment from the last cell to (x, y), the segments
+     * widened by {@code radius} for the line width.
+     *
+     * @param bounds Receives {left, top, right, bottom}.
+     * @return false, leaving {@code bounds} alone, if no pattern is in progress.
+     */
+    public boolean getMoveBounds(int sizeBefore, float x, float y, float radius, float[] bounds) {
+        final int patternSize = mPattern.size();
+        if (!mPatternInProgress || patternSize == 0) {
+            return false;
+        }
+        final float width = mSquareWidth * 0.5f;
+        final float height = mSquareHeight * 0.5f;
+        final Cell lastCell = mPattern.get(patternSize - 1);
+        final float lastX = getCenterXForColumn(lastCell.column);
+        final float lastY = getCenterYForRow(lastCell.row);
+        bounds[0] = Math.min(lastX, x) - radius;
+        bounds[1] = Math.min(lastY, y) - radius;
+        bounds[2] = Math.max(lastX, x) + radius;
+        bounds[3] = Math.max(lastY, y) + radius;
+        // one sample can sweep across several cells
+        for (int k = Math.max(sizeBefore, 0); k < patternSize; k++) {
+            final Cell cell = mPattern.get(k);
+            final float cellX = getCenterXForColumn(cell.column);
+            final float cellY = getCenterYForRow(cell.row);
+            union(bounds, cellX - width, cellY - height, cellX + width, cellY + height);
+            if (k > 0) {
+                final Cell previous = mPattern.get(k - 1);
+                final float previousX = getCenterXForColumn(previous.column);
+                final float previousY = getCenterYForRow(previous.row);
+                union(bounds, Math.min(previousX, cellX) - radius, Math.min(previousY, cellY) - radius,
+                        Math.max(previousX, cellX) + radius, Math.max(previousY, cellY) + radius);
+            }
+        }
+        return true;
+    }
+
+    private static void union(float[] bounds, float left, float top, float right, float bottom) {
+        bounds[0] = Math.min(bounds[0], left);
+        bounds[1] = Math.min(bounds[1], top);
+        bounds[2] = Math.max(bounds[2], right);
+        bounds[3] = Math.max(bounds[3], bottom);
+    }
+
+    /**
+     * Builds the segments the error animation retracts along: one point per
+     * cell from the start of {@code pattern} up to the first cell that is not
+     * in {@code drawLookup}, running from the cell center to the center of the
+     * next cell. The last point only has its start set.
+     *
+     * @param points Receives the segments, cleared first.
+     * @param cells  Receives the cells of the segments, cleared first.
+     */
+    public void buildMovePoints(List<Cell> pattern, boolean[][] drawLookup,
+                                List<LockMovePoint> points, List<Cell> cells) {
+        points.clear();
+        cells.clear();
+        LockMovePoint previous = null;
+        for (int i = 0, count = pattern.size(); i < count; i++) {
+            final Cell cell = pattern.get(i);
+            // only the part of the pattern stored in the lookup table (this is
+            // only different in the case of animation)
+            if (!drawLookup[cell.row][cell.column]) {
+                break;
+            }
+            final float centerX = getCenterXForColumn(cell.column);
+            final float centerY = getCenterYForRow(cell.row);
+            final LockMovePoint point = new LockMovePoint();
+            point.setCurX(centerX);
+            point.setCurY(centerY);
+            if (previous != null) {
+                previous.setMoveX(centerX);
+                previous.setMoveY(centerY);
+            }
+            cells.add(cell);
+            points.add(point);
+            previous = point;
+        }
+    }
+
+    /**
+     * Replaces the pattern without sending events.
+     */
+    public void setPattern(List<Cell> pattern) {
+        clearPattern();
+        for (int i = 0, count = pattern.size(); i < count; i++) {
+            final Cell cell = pattern.get(i);
+            mPattern.add(cell);
+            mPatternLookup[cell.row][cell.column] = true;
+        }
+    }
+
+    /**
+     * Clears the pattern without sending events.
+     */
+    public void clearPattern() {
+        mPattern.clear();
+        mPatternCode = null;
+        for (int i = 0; i < mGridSize; i++) {
+            for (int j = 0; j < mGridSize; j++) {
+                mPatternLookup[i][j] = false;
+            }
+        }
+    }
+
+    /**
+     * A finger went down: starts a new pattern.
+     *
+     * @return The cell that was hit, or null.
+     */
+    public Cell onDown(float x, float y, long time) {
+        clearPattern();
+        setLastSample(x, y, time);
+        mTracking = true;
+        final Cell hitCell = detectAndAddHit(x, y);
+        if (hitCell != null) {
+            mPatternInProgress = true;
+            notifyPatternStarted();
+        } else if (mPatternInProgress) {
+            mPatternInProgress = false;
+            notifyPatternCleared();
+        }
+        return hitCell;
+    }
+
+    /**
+     * The finger moved to (x, y). Feed every historical sample of a move event
+     * in order. The move from the previous sample is treated as a straight
+     * segment: every cell whose hit zone it crosses is added, in the order it
+     * crosses them, so fast swipes with sparse samples skip no cell.
+     *
+     * @return The last cell that was hit, or null.
+     */
+    public Cell onMove(float x, float y, long time) {
+        final float fromX = mLastX;
+        final float fromY = mLastY;
+        setLastSample(x, y, time);
+        if (mTracking) {
+            sweep(fromX, fromY, x, y, true);
+            return mSweepHit;
+        }
+        final Cell hitCell = detectAndAddHit(x, y);
+        if (hitCell != null && mPattern.size() == 1) {
+            mPatternInProgress = true;
+            notifyPatternStarted();
+        }
+        return hitCell;
+    }
+
+    /**
+     * The finger went up.
+     *
+     * @return whether a pattern was detected.
+     */
+    public boolean onUp(float x, float y, long time) {
+        setLastSample(x, y, time);
+        mTracking = false;
+        if (mPattern.isEmpty()) {
+            return false;
+        }
+        mPatternInProgress = false;
+        if (mListener != null) {
+            mListener.onPatternDetected();
+        }
+        return true;
+    }
+
+    /**
+     * The gesture was cancelled: drops a pattern in progress.
+     */
+    public void onCancel() {
+        mTracking = false;
+        if (mPatternInProgress) {
+            mPatternInProgress = false;
+            clearPattern();
+            notifyPatternCleared();
+        }
+    }
+
+    /**
+     * Determines whether the point x, y will add a new point to the current
+     * pattern (in addition to finding the cell, also makes heuristic choices
+     * such as filling in gaps based on current pattern).
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     */
+    private Cell detectAndAddHit(float x, float y) {
+        final Cell cell = checkForNewHit(x, y);
+        if (cell != null) {
+            addHit(cell);
+            return cell;
+        }
+        return null;
+    }
+
+    /**
+     * @return the fraction of the segment from (x0, y0) to (x1, y1) before it
+     * enters the hit zone of a cell that is not in the pattern, 1 if it enters
+     * none. Used to keep a predicted tip out of cells that were not hit.
+     */
+    public float getUnvisitedLimit(float x0, float y0, float x1, float y1) {
+        return sweep(x0, y0, x1, y1, false);
+    }
+
+    /**
+     * Walks the grid squares the segment from (x0, y0) to (x1, y1) passes
+     * through, in order, and tests the segment against the hit zone of each
+     * cell that is not in the pattern. Each hit zone lies inside its square,
+     * so this is also the order in which the segment crosses the hit zones.
+     *
+     * @param addHits Whether to add every cell crossed, the last one added
+     *                being left in {@link #mSweepHit}, or to stop at the
+     *                first one.
+     * @return The fraction of the segment before the first hit zone crossed
+     * when not adding, otherwise 1.
+     */
+    private float sweep(float x0, float y0, float x1, float y1, boolean addHits) {
+        mSweepHit = null;
+        final int gridSize = mGridSize;
+        // in grid units: square (row, column) is [column, column + 1) x [row, row + 1)
+        final float gx0 = (x0 - mLeft) * mInvSquareWidth;
+        final float gy0 = (y0 - mTop) * mInvSquareHeight;
+        final float dx = (x1 - mLeft) * mInvSquareWidth - gx0;
+        final float dy = (y1 - mTop) * mInvSquareHeight - gy0;
+
+        // clip the segment to the grid (Liang-Barsky)
+        float tEnter = 0f, tExit = 1f;
+        if (dx == 0f) {
+            if (gx0 < 0f || gx0 >= gridSize) {
+                return 1f;
+            }
+        } else {
+            final float ta = -gx0 / dx;
+            final float tb = (gridSize - gx0) / dx;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        }
+        if (dy == 0f) {
+            if (gy0 < 0f || gy0 >= gridSize) {
+                return 1f;
+            }
+        } else {
+            final float ta = -gy0 / dy;
+            final float tb = (gridSize - gy0) / dy;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        }
+        if (tEnter > tExit) {
+            return 1f;
+        }
+
+        // walk the squares from the one the clipped segment starts in (DDA)
+        int column = clampToGrid((int) (gx0 + dx * tEnter));
+        int row = clampToGrid((int) (gy0 + dy * tEnter));
+        final int stepX = dx > 0 ? 1 : -1;
+        final int stepY = dy > 0 ? 1 : -1;
+        final float tDeltaX = dx != 0f ? Math.abs(1f / dx) : Float.POSITIVE_INFINITY;
+        final float tDeltaY = dy != 0f ? Math.abs(1f / dy) : Float.POSITIVE_INFINITY;
+        float tMaxX = dx != 0f ? ((dx > 0 ? column + 1 : column) - gx0) / dx : Float.POSITIVE_INFINITY;
+        float tMaxY = dy != 0f ? ((dy > 0 ? row + 1 : row) - gy0) / dy : Float.POSITIVE_INFINITY;
+
+        // a segment crosses at most 2 * gridSize squares; the bound guards
+        // against rounding at square corners
+        for (int steps = 2 * gridSize; steps > 0; steps--) {
+            if (!mPatternLookup[row][column]) {
+                final float entry = segmentEntry(x0, y0, x1, y1, row, column);
+                if (entry >= 0f && !addHits) {
+                    return entry;
+                }
+                if (entry >= 0f) {
+                    final Cell cell = Cell.of(row, column);
+                    addHit(cell);
+                    if (mPattern.size() == 1) {
+                        mPatternInProgress = true;
+                        notifyPatternStarted();
+                    }
+                    mSweepHit = cell;
+                }
+            }
+            if (tMaxX < tMaxY) {
+                if (tMaxX > tExit) {
+                    break;
+                }
+                column += stepX;
+                tMaxX += tDeltaX;
+            } else {
+                if (tMaxY > tExit) {
+                    break;
+                }
+                row += stepY;
+                tMaxY += tDeltaY;
+            }
+            if (row < 0 || row >= gridSize || column < 0 || column >= gridSize) {
+                break;
+            }
+        }
+        return 1f;
+    }
+
+    /**
+     * @return the fraction of the segment from (x0, y0) to (x1, y1) at which it
+     * enters the hit zone of the cell, 0 if it starts inside, or -1 if it does
+     * not touch it.
+     */
+    private float segmentEntry(float x0, float y0, float x1, float y1, int row, int column) {
+        // solve |p0 + t * d - center|^2 = r^2 for the smaller t
+        final float fromCenterX = x0 - getCenterXForColumn(column);
+        final float fromCenterY = y0 - getCenterYForRow(row);
+        final float c = fromCenterX * fromCenterX + fromCenterY * fromCenterY - mHitRadiusSquared;
+        if (c <= 0f) {
+            return 0f;
+        }
+        final float dx = x1 - x0;
+        final float dy = y1 - y0;
+        final float a = dx * dx + dy * dy;
+        final float halfB = fromCenterX * dx + fromCenterY * dy;
+        if (a == 0f || halfB >= 0f) {
+            // a point outside, or moving away from the center
+            return -1f;
+        }
+        final float discriminant = halfB * halfB - a * c;
+        if (discriminant < 0f) {
+            return -1f;
+        }
+        final float t = (-halfB - (float) Math.sqrt(discriminant)) / a;
+        return t <= 1f ? t : -1f;
+    }
+
+    private int clampToGrid(int index) {
+        return Math.max(0, Math.min(mGridSize - 1, index));
+    }
+
+    /**
+     * Adds {@code cell}, after filling the gap to the last cell.
+     */
+    private void addHit(Cell cell) {
+        // check for gaps in existing pattern: every cell whose center lies
+        // exactly on the segment from the last cell to this one is filled in
+        final ArrayList<Cell> pattern = mPattern;
+        if (!pattern.isEmpty()) {
+            final Cell lastCell = pattern.get(pattern.size() - 1);
+            final LockPatternGapTable gapTable = mGapTable;
+            final int pair = gapTable.pairIndex(lastCell, cell);
+            for (int i = gapTable.start(pair), end = gapTable.start(pair + 1); i < end; i++) {
+                final Cell fillInGapCell = gapTable.cell(i);
+                if (!mPatternLookup[fillInGapCell.row][fillInGapCell.column]) {
+                    addCellToPattern(fillInGapCell);
+                }
+            }
+        }
+        addCellToPattern(cell);
+    }
+
+    private void addCellToPattern(Cell newCell) {
+        mPatternLookup[newCell.row][newCell.column] = true;
+        mPattern.add(newCell);
+        mPatternCode = null;
+        if (mListener != null) {
+            mListener.onPatternCellAdded(newCell);
+        }
+    }
+
+    /**
+     * @return the cell whose hit zone contains (x, y) if it is not part of the
+     * pattern yet, or null.
+     */
+    public Cell checkForNewHit(float x, float y) {
+
+        final int rowHit = getRowHit(y);
+        if (rowHit < 0) {
+            return null;
+        }
+        final int columnHit = getColumnHit(x);
+        if (columnHit < 0) {
+            return null;
+        }
+
+        // the hit zone is a circle around the cell center
+        final float dx = x - getCenterXForColumn(columnHit);
+        final float dy = y - getCenterYForRow(rowHit);
+        if (dx * dx + dy * dy > mHitRadiusSquared) {
+            return null;
+        }
+
+        if (mPatternLookup[rowHit][columnHit]) {
+            return null;
+        }
+        return Cell.of(rowHit, columnHit);
+    }
+
+    /**
+     * Helper method to find the row whose square y falls into.
+     *
+     * @param y The y coordinate
+     * @return The row that y falls in, or -1 if it falls in no row.
+     */
+    private int getRowHit(float y) {
+        final float offset = (y - mTop) * mInvSquareHeight;
+        if (offset < 0 || offset >= mGridSize) {
+            return -1;
+        }
+        return (int) offset;
+    }
+
+    /**
+     * Helper method to find the column whose square x falls into.
+     *
+     * @param x The x coordinate.
+     * @return The column that x falls in, or -1 if it falls in no column.
+     */
+    private int getColumnHit(float x) {
+        final float offset = (x - mLeft) * mInvSquareWidth;
+        if (offset < 0 || offset >= mGridSize) {
+            return -1;
+        }
+        return (int) offset;
+    }
+
+    private void setLastSample(float x, float y, long time) {
+        mLastX = x;
+        mLastY = y;
+        mLastTime = time;
+    }
+
+    private void notifyPatternStarted() {
+        if (mListener != null) {
+            mListener.onPatternStart();
+        }
+    }
+
+    private void notifyPatternCleared() {
+        if (mListener != null) {
+            mListener.onPatternCleared();
+        }
+    }
+}
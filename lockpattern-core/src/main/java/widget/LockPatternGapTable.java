@@ -0,0 +1,109 @@
+package widget;
+
+/**
+ * Precomputed "cells between" table used to fill gaps in a pattern.
+ * <p/>
+ * For every ordered pair of cells of a grid it holds, in order of travel, the
+ * cells whose centers lie exactly on the segment between the two. The table is
+ * built once per grid size with integer gcd stepping, so filling a gap on the
+ * touch path is a plain table walk.
+ */
+public final class LockPatternGapTable {
+
+    private static final LockPatternGapTable[] sTables = new LockPatternGapTable[Cell.MAX_GRID_SIZE + 1];
+
+    private final int mGridSize;
+    private final int mCellCount;
+    /**
+     * Cells between the pair {@code p} are {@code mCells[mStart[p]]} up to
+     * (excluding) {@code mCells[mStart[p + 1]]}.
+     */
+    private final int[] mStart;
+    private final Cell[] mCells;
+
+    /**
+     * @return the shared table of a {@code gridSize} X {@code gridSize} grid.
+     */
+    public static synchronized LockPatternGapTable forGridSize(int gridSize) {
+        if (gridSize < 1 || gridSize > Cell.MAX_GRID_SIZE) {
+            throw new IllegalArgumentException("gridSize must be in range 1-" + Cell.MAX_GRID_SIZE);
+        }
+        LockPatternGapTable table = sTables[gridSize];
+        if (table == null) {
+            table = new LockPatternGapTable(gridSize);
+            sTables[gridSize] = table;
+        }
+        return table;
+    }
+
+    private LockPatternGapTable(int gridSize) {
+        mGridSize = gridSize;
+        mCellCount = gridSize * gridSize;
+        final int pairCount = mCellCount * mCellCount;
+        mStart = new int[pairCount + 1];
+
+        // first pass sizes the table, second pass fills it
+        int total = 0;
+        for (int pair = 0; pair < pairCount; pair++) {
+            mStart[pair] = total;
+            total += stepsBetween(pair) - 1;
+        }
+        mStart[pairCount] = total;
+
+        mCells = new Cell[total];
+        for (int pair = 0; pair < pairCount; pair++) {
+            final int from = pair / mCellCount;
+            final int to = pair % mCellCount;
+            final int fromRow = from / gridSize, fromColumn = from % gridSize;
+            final int steps = stepsBetween(pair);
+            final int stepRow = (to / gridSize - fromRow) / steps;
+            final int stepColumn = (to % gridSize - fromColumn) / steps;
+            for (int i = 1; i < steps; i++) {
+                mCells[mStart[pair] + i - 1] = Cell.of(fromRow + stepRow * i, fromColumn + stepColumn * i);
+            }
+        }
+    }
+
+    /**
+     * @return the number of grid steps between the cells of {@code pair}, at least 1.
+     */
+    private int stepsBetween(int pair) {
+        final int from = pair / mCellCount;
+        final int to = pair % mCellCount;
+        final int dRow = Math.abs(to / mGridSize - from / mGridSize);
+        final int dColumn = Math.abs(to % mGridSize - from % mGridSize);
+        return Math.max(1, gcd(dRow, dColumn));
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    public int getGridSize() {
+        return mGridSize;
+    }
+
+    /**
+     * @return the index of the ordered pair ({@code from}, {@code to}).
+     */
+    public int pairIndex(Cell from, Cell to) {
+        return (from.row * mGridSize + from.column) * mCellCount + to.row * mGridSize + to.column;
+    }
+
+    /**
+     * @return the position of the first cell between the cells of {@code pair};
+     * the cells end at {@code start(pair + 1)}.
+     */
+    public int start(int pair) {
+        return mStart[pair];
+    }
+
+    public Cell cell(int position) {
+        return mCells[position];
+    }
+}
@@ -0,0 +1,273 @@
+package widget;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.SecureRandom;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 hashing of patterns.
+ * <p/>
+ * A hashed pattern is stored as {@code pbkdf2-sha256$<iterations>$<salt>$<hash>}
+ * with salt and hash in hex, so the cost travels with the hash and can be
+ * raised later without breaking stored patterns. PBKDF2 is computed on top of
+ * {@link Mac} because the SHA-256 variant of {@code SecretKeyFactory} is not
+ * available before API 26.
+ * <p/>
+ * {@link #calibrate(long)} picks the iteration count for the current machine;
+ * {@link #main(String[])} runs it as a plain JVM benchmark.
+ */
+public final class LockPatternHasher {
+
+    public static final int MIN_ITERATIONS = 1000;
+    /**
+     * Unlock verification budget used when a pattern is set up.
+     */
+    public static final long DEFAULT_BUDGET_MILLIS = 100;
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 32;
+    private static final int CALIBRATION_ITERATIONS = 2000;
+    private static final int CALIBRATION_RUNS = 10;
+    private static final int CALIBRATION_ROUNDS = 3;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static SecureRandom sRandom;
+
+    private final int mIterations;
+
+    public LockPatternHasher(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be positive");
+        }
+        mIterations = iterations;
+    }
+
+    public int getIterations() {
+        return mIterations;
+    }
+
+    /**
+     * @return the stored form of {@code code} with a fresh random salt.
+     */
+    public String hash(LockPatternCode code) {
+        byte[] salt = new byte[SALT_LENGTH];
+        random().nextBytes(salt);
+        byte[] hash = pbkdf2(secret(code), salt, mIterations);
+        return toStored(mIterations, salt, hash);
+    }
+
+    /**
+     * @return whether {@code stored} is a hash, rather than a pattern string
+     * saved by older versions with {@link LockPatternCode#patternToString}.
+     */
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /**
+     * @return the iteration count {@code stored} was hashed with.
+     */
+    public static int getIterations(String stored) {
+        return Integer.parseInt(split(stored)[0]);
+    }
+
+    static byte[] getSalt(String stored) {
+        return fromHex(split(stored)[1]);
+    }
+
+    static byte[] getDigest(String stored) {
+        return fromHex(split(stored)[2]);
+    }
+
+    /**
+     * @return the stored form of a hash, the inverse of {@link #getIterations},
+     * {@link #getSalt} and {@link #getDigest}.
+     */
+    static String toStored(int iterations, byte[] salt, byte[] digest) {
+        return PREFIX + iterations + '$' + toHex(salt) + '$' + toHex(digest);
+    }
+
+    /**
+     * Checks {@code code} against a hash made by {@link #hash(LockPatternCode)}.
+     * The digests are compared in constant time.
+     */
+    public static boolean verify(String stored, LockPatternCode code) {
+        final String[] parts = split(stored);
+        final int iterations = Integer.parseInt(parts[0]);
+        final byte[] salt = fromHex(parts[1]);
+        final byte[] expected = fromHex(parts[2]);
+        return isEqual(expected, pbkdf2(secret(code), salt, iterations));
+    }
+
+    /**
+     * Finds the largest iteration count, in steps of {@link #MIN_ITERATIONS},
+     * whose verification still takes less than {@code budgetMillis} on this
+     * machine, and never less than {@link #MIN_ITERATIONS}.
+     */
+    public static int calibrate(long budgetMillis) {
+        final byte[] secret = new byte[]{3, 0, 4, 8, 5, 2};
+        final byte[] salt = new byte[SALT_LENGTH];
+
+        // warm up, then estimate the cost of one iteration from the fastest run
+        final long budgetNanos = budgetMillis * 1000000L;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_RUNS; i++) {
+            best = Math.min(best, time(secret, salt, CALIBRATION_ITERATIONS));
+        }
+        int iterations = scale(CALIBRATION_ITERATIONS, best, budgetNanos);
+
+        // the runtime keeps optimizing while we measure, so refine the
+        // estimate at the candidate count itself
+        for (int i = 0; i < CALIBRATION_ROUNDS && iterations > MIN_ITERATIONS; i++) {
+            iterations = scale(iterations, time(secret, salt, iterations), budgetNanos);
+        }
+
+        // the estimate is linear, so confirm it and back off while over budget
+        while (iterations > MIN_ITERATIONS) {
+            if (time(secret, salt, iterations) < budgetNanos) {
+                break;
+            }
+            iterations -= Math.max(MIN_ITERATIONS, iterations / 10 - iterations / 10 % MIN_ITERATIONS);
+        }
+        return Math.max(MIN_ITERATIONS, iterations);
+    }
+
+    private static long time(byte[] secret, byte[] salt, int iterations) {
+        final long start = System.nanoTime();
+        pbkdf2(secret, salt, iterations);
+        return Math.max(1, System.nanoTime() - start);
+    }
+
+    /**
+     * @return the iteration count, rounded down to {@link #MIN_ITERATIONS},
+     * that takes {@code budgetNanos} if {@code iterations} took {@code nanos}.
+     */
+    private static int scale(int iterations, long nanos, long budgetNanos) {
+        long scaled = (long) ((double) iterations * budgetNanos / nanos);
+        scaled = Math.min(scaled, Integer.MAX_VALUE - MIN_ITERATIONS);
+        return (int) (scaled - scaled % MIN_ITERATIONS);
+    }
+
+    /**
+     * Prints the calibrated iteration count and the measured verification time.
+     * Usage: {@code LockPatternHasher [budgetMillis]}.
+     */
+    public static void main(String[] args) {
+        final long budget = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_BUDGET_MILLIS;
+        final int iterations = calibrate(budget);
+        final byte[] secret = new byte[]{3, 0, 4, 8, 5, 2};
+        final byte[] salt = new byte[SALT_LENGTH];
+        final int runs = 10;
+        long total = 0, worst = 0;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            pbkdf2(secret, salt, iterations);
+            long took = System.nanoTime() - start;
+            total += took;
+            worst = Math.max(worst, took);
+        }
+        System.out.println("budget " + budget + " ms: " + iterations + " iterations, verify avg "
+                + total / runs / 1000 + " us, max " + worst / 1000 + " us");
+    }
+
+    /**
+     * PBKDF2 with HMAC-SHA256 and a single 32 byte block.
+     */
+    static byte[] pbkdf2(byte[] secret, byte[] salt, int iterations) {
+        final Mac mac;
+        try {
+            mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret, ALGORITHM));
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException(e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        }
+        final byte[] u = new byte[HASH_LENGTH];
+        final byte[] result = new byte[HASH_LENGTH];
+        try {
+            // U1 = PRF(P, S || INT(1))
+            mac.update(salt);
+            mac.update(new byte[]{0, 0, 0, 1});
+            mac.doFinal(u, 0);
+            System.arraycopy(u, 0, result, 0, HASH_LENGTH);
+            for (int i = 1; i < iterations; i++) {
+                mac.update(u);
+                mac.doFinal(u, 0);
+                for (int j = 0; j < HASH_LENGTH; j++) {
+                    result[j] ^= u[j];
+                }
+            }
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+
+    /**
+     * The grid size followed by the cell indices, so equal cells on different
+     * grids do not hash the same.
+     */
+    private static byte[] secret(LockPatternCode code) {
+        final int size = code.size();
+        byte[] secret = new byte[size + 1];
+        secret[0] = (byte) code.getGridSize();
+        for (int i = 0; i < size; i++) {
+            secret[i + 1] = (byte) code.cellIndexAt(i);
+        }
+        return secret;
+    }
+
+    private static boolean isEqual(byte[] a, byte[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        int diff = 0;
+        for (int i = 0; i < a.length; i++) {
+            diff |= a[i] ^ b[i];
+        }
+        return diff == 0;
+    }
+
+    private static String[] split(String stored) {
+        if (!isHashed(stored)) {
+            throw new IllegalArgumentException("not a pattern hash");
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("malformed pattern hash");
+        }
+        return parts;
+    }
+
+    private static synchronized SecureRandom random() {
+        if (sRandom == null) {
+            sRandom = new SecureRandom();
+        }
+        return sRandom;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("malformed pattern hash");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
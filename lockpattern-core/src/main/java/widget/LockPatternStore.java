@@ -0,0 +1,433 @@
+package widget;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Stores the lock pattern in a small binary file.
+ * <p/>
+ * The value is whatever {@link LockPatternHasher#hash} produced, or a plain
+ * pattern string saved by older versions. It is cached in memory: the first
+ * read loads the file, every later read is a volatile field access. Writes
+ * update the cache at once and reach the disk in the background, through a
+ * temporary file that is renamed over the record so a crash never leaves half
+ * a record behind.
+ * <p/>
+ * Only a missing file means no pattern is stored. A record that cannot be read
+ * or fails its checks is {@link #isCorrupt() corrupt}, which counts as a
+ * pattern being set so the app stays locked.
+ * <p/>
+ * The store is plain Java; use one instance per file, see {@link #open(File)}.
+ */
+public class LockPatternStore {
+
+    private static final int MAGIC = 0x4C505331; // "LPS1"
+    private static final int VERSION = 1;
+    private static final int TYPE_HASH = 1;
+    private static final int TYPE_PLAIN = 2;
+    private static final int MAX_RECORD_SIZE = 4096;
+    /**
+     * Marks the cache as loaded with no pattern stored.
+     */
+    private static final String NONE = new String("");
+    /**
+     * Marks the cache as loaded from a record that cannot be read.
+     */
+    private static final String CORRUPT = new String("");
+    private static final HashMap<String, LockPatternStore> sStores = new HashMap<String, LockPatternStore>();
+
+    private final File mFile;
+    private final File mTempFile;
+    private final ExecutorService mWriter;
+    private final AtomicInteger mWriteGeneration = new AtomicInteger();
+    private final Object mLoadLock = new Object();
+    private volatile String mValue;
+    private volatile IOException mWriteError;
+
+    /**
+     * @return the shared store of {@code file}.
+     */
+    public static LockPatternStore open(File file) {
+        final String key = file.getAbsolutePath();
+        synchronized (sStores) {
+            LockPatternStore store = sStores.get(key);
+            if (store == null) {
+                store = new LockPatternStore(file);
+                sStores.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    LockPatternStore(File file) {
+        mFile = file;
+        mTempFile = new File(file.getPath() + ".tmp");
+        mWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "LockPatternStore");
+                // never keeps the process alive; flush() is what makes writes durable
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private String getValue() {
+        final String value = mValue;
+        return value != null ? value : load();
+    }
+
+    /**
+     * @return the stored pattern, or null if none is stored or the record is
+     * {@link #isCorrupt() corrupt}.
+     */
+    public String getStoredPattern() {
+        final String value = getValue();
+        return value == NONE || value == CORRUPT ? null : value;
+    }
+
+    /**
+     * @return whether a pattern is stored, true as well if the record is
+     * {@link #isCorrupt() corrupt}.
+     */
+    public boolean hasPattern() {
+        return getValue() != NONE;
+    }
+
+    /**
+     * @return whether the record exists but cannot be read or fails its checks.
+     * No pattern matches it; {@link #setStoredPattern} or {@link #clear()}
+     * replace it.
+     */
+    public boolean isCorrupt() {
+        return getValue() == CORRUPT;
+    }
+
+    /**
+     * @param stored A value of {@link LockPatternHasher#hash} or a pattern
+     *               string of {@link LockPatternCode#patternToString}.
+     * @throws IllegalArgumentException if {@code stored} cannot be stored.
+     */
+    public void setStoredPattern(String stored) {
+        if (stored == null || stored.length() == 0) {
+            throw new IllegalArgumentException("stored pattern must not be empty");
+        }
+        // encoded here so a malformed value fails the caller, not the writer thread
+        final byte[] record;
+        try {
+            record = encode(stored);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("malformed stored pattern: " + e.getMessage());
+        }
+        write(stored, record);
+    }
+
+    public void clear() {
+        write(NONE, null);
+    }
+
+    /**
+     * Waits until all writes so far are on disk.
+     *
+     * @throws IOException the error of the last write that failed, if any.
+     */
+    public void flush() throws IOException, InterruptedException {
+        final Object done = new Object();
+        final boolean[] finished = new boolean[1];
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (done) {
+                    finished[0] = true;
+                    done.notifyAll();
+                }
+            }
+        });
+        synchronized (done) {
+            while (!finished[0]) {
+                done.wait();
+            }
+        }
+        final IOException error = mWriteError;
+        if (error != null) {
+            mWriteError = null;
+            throw error;
+        }
+    }
+
+    /**
+     * Stops the writer thread after the pending writes.
+     */
+    public void close() throws InterruptedException {
+        mWriter.shutdown();
+        mWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        synchronized (sStores) {
+            if (sStores.get(mFile.getAbsolutePath()) == this) {
+                sStores.remove(mFile.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Prints the caller side cost of saving the pattern the way
+     * {@code SharedPreferences.commit()} does, of a durable synchronous
+     * write of the record (written, synced and renamed before returning), of
+     * a write-behind {@link #setStoredPattern}, and of a cold and a cached
+     * read. Usage: {@code LockPatternStore [directory]}; on a device
+     * {@code PatternStoreTimingTest} measures the real SharedPreferences.
+     */
+    public static void main(String[] args) throws Exception {
+        final File dir = args.length > 0 ? new File(args[0])
+                : new File(System.getProperty("java.io.tmpdir"));
+        final File file = new File(dir, "lock_pattern_bench");
+        final String value = new LockPatternHasher(LockPatternHasher.MIN_ITERATIONS)
+                .hash(LockPatternCode.fromString("\u0000\u0001\u0002\u0005\u0008", 3));
+        final int runs = 200;
+
+        final File preferences = new File(dir, "lock_pattern_bench.xml");
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            commitPreferences(preferences, "pattern", value);
+        }
+        final long commit = (System.nanoTime() - start) / runs;
+        preferences.delete();
+
+        LockPatternStore sync = new LockPatternStore(file);
+        start = System.nanoTime();
+        final byte[] record = encode(value);
+        for (int i = 0; i < runs; i++) {
+            sync.writeRecord(record);
+        }
+        final long syncWrite = (System.nanoTime() - start) / runs;
+        sync.close();
+
+        LockPatternStore store = new LockPatternStore(file);
+        start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            store.setStoredPattern(value);
+        }
+        final long asyncWrite = (System.nanoTime() - start) / runs;
+        store.flush();
+        store.close();
+
+        LockPatternStore cold = new LockPatternStore(file);
+        start = System.nanoTime();
+        cold.getStoredPattern();
+        final long coldRead = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            cold.getStoredPattern();
+        }
+        final long cachedRead = (System.nanoTime() - start) / runs;
+        cold.clear();
+        cold.flush();
+        cold.close();
+
+        System.out.println("preferences commit " + commit / 1000 + " us, synchronous write "
+                + syncWrite / 1000 + " us, write-behind "
+                + asyncWrite / 1000 + " us, cold read " + coldRead / 1000 + " us, cached read "
+                + cachedRead + " ns");
+    }
+
+    /**
+     * Writes a one string map the way {@code SharedPreferencesImpl} commits:
+     * the file is moved to a backup, the whole map written as XML and synced,
+     * then the backup deleted.
+     */
+    private static void commitPreferences(File file, String key, String value) throws IOException {
+        final File backup = new File(file.getPath() + ".bak");
+        if (file.exists() && !backup.exists() && !file.renameTo(backup)) {
+            throw new IOException("cannot rename " + file + " to " + backup);
+        }
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n"
+                    + "    <string name=\"" + key + "\">" + value.replace("&", "&amp;").replace("<", "&lt;")
+                    + "</string>\n</map>\n").getBytes("UTF-8"));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        backup.delete();
+    }
+
+    /**
+     * @param record The encoded {@code value}, null for {@link #NONE}.
+     */
+    private void write(final String value, final byte[] record) {
+        synchronized (mLoadLock) {
+            mValue = value;
+        }
+        final int generation = mWriteGeneration.incrementAndGet();
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                // a later write supersedes this one
+                if (generation != mWriteGeneration.get()) {
+                    return;
+                }
+                try {
+                    if (value == NONE) {
+                        if (mFile.exists() && !mFile.delete()) {
+                            throw new IOException("cannot delete " + mFile);
+                        }
+                    } else {
+                        writeRecord(record);
+                    }
+                } catch (IOException e) {
+                    mWriteError = e;
+                } catch (RuntimeException e) {
+                    mWriteError = new IOException("cannot write " + mFile, e);
+                }
+            }
+        });
+    }
+
+    private String load() {
+        synchronized (mLoadLock) {
+            if (mValue == null) {
+                String value;
+                try {
+                    value = readRecord();
+                } catch (IOException e) {
+                    // not the same as a missing file: that would unlock the app
+                    value = CORRUPT;
+                } catch (RuntimeException e) {
+                    value = CORRUPT;
+                }
+                mValue = value == null ? NONE : value;
+            }
+            return mValue;
+        }
+    }
+
+    private String readRecord() throws IOException {
+        final FileInputStream in;
+        try {
+            in = new FileInputStream(mFile);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            final long length = mFile.length();
+            if (length < 4 || length > MAX_RECORD_SIZE) {
+                throw new IOException("bad record size " + length);
+            }
+            final byte[] record = new byte[(int) length];
+            new DataInputStream(in).readFully(record);
+            return decode(record);
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeRecord(byte[] record) throws IOException {
+        final FileOutputStream out = new FileOutputStream(mTempFile);
+        try {
+            out.write(record);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!mTempFile.renameTo(mFile)) {
+            mTempFile.delete();
+            throw new IOException("cannot rename " + mTempFile + " to " + mFile);
+        }
+    }
+
+    /**
+     * Record layout, big endian: magic, version, type, payload, CRC32 of all
+     * bytes before it. A hash payload is iterations, salt and digest with one
+     * length byte each; a plain payload is the cell indices with one length byte.
+     */
+    static byte[] encode(String value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        if (LockPatternHasher.isHashed(value)) {
+            out.writeByte(TYPE_HASH);
+            out.writeInt(LockPatternHasher.getIterations(value));
+            writeBytes(out, LockPatternHasher.getSalt(value));
+            writeBytes(out, LockPatternHasher.getDigest(value));
+        } else {
+            out.writeByte(TYPE_PLAIN);
+            final int length = value.length();
+            if (length > 0xFF) {
+                throw new IOException("pattern too long");
+            }
+            out.writeByte(length);
+            for (int i = 0; i < length; i++) {
+                out.writeByte(value.charAt(i));
+            }
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static String decode(byte[] record) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length - 4);
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a pattern record");
+        }
+        if (in.readUnsignedByte() != VERSION) {
+            throw new IOException("unknown record version");
+        }
+        final String value;
+        final int type = in.readUnsignedByte();
+        if (type == TYPE_HASH) {
+            final int iterations = in.readInt();
+            final byte[] salt = readBytes(in);
+            final byte[] digest = readBytes(in);
+            value = LockPatternHasher.toStored(iterations, salt, digest);
+        } else if (type == TYPE_PLAIN) {
+            final char[] cells = new char[in.readUnsignedByte()];
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = (char) in.readUnsignedByte();
+            }
+            value = new String(cells);
+        } else {
+            throw new IOException("unknown record type " + type);
+        }
+        if (in.readInt() != (int) crc.getValue() || in.available() != 0) {
+            throw new IOException("corrupt pattern record");
+        }
+        return value;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes.length > 0xFF) {
+            throw new IOException("field too long: " + bytes.length + " bytes");
+        }
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readUnsignedByte()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
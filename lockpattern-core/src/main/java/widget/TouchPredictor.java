@@ -0,0 +1,156 @@
+package widget;
+
+/**
+ * Predicts where the finger will be a little later from its recent touch
+ * samples, so the rubber band tip can be drawn where the finger is when the
+ * frame is shown rather than where it was when it was sampled.
+ * <p/>
+ * The velocity is the least squares slope of the samples of the last
+ * {@link #WINDOW_MILLIS} ms, so a single noisy sample does not throw the tip
+ * off. A prediction is only made when the samples are dense and regular and
+ * the finger moves on a straight line, and it never leads the finger further
+ * than its last sample interval would at that speed; otherwise the prediction
+ * is the last sample, as if there was no predictor. Allocation free.
+ */
+public class TouchPredictor {
+
+    /**
+     * How far ahead to predict by default: about one frame.
+     */
+    public static final int DEFAULT_HORIZON_MILLIS = 16;
+    /**
+     * Samples older than this, relative to the last one, are ignored.
+     */
+    static final int WINDOW_MILLIS = 50;
+    private static final int MAX_SAMPLES = 8;
+    /**
+     * Fewer samples in the window than this do not tell a curve from a line.
+     */
+    static final int MIN_SAMPLES = 3;
+    /**
+     * Largest root mean square distance, in pixels, of the samples from the
+     * fitted line; past it the finger is turning.
+     */
+    static final float MAX_RESIDUAL = 2f;
+    /**
+     * Smallest cosine of the angle between the fitted velocity and the last
+     * sample interval, about 25 degrees.
+     */
+    static final float MIN_TURN_COSINE = 0.9f;
+
+    private final float[] mX = new float[MAX_SAMPLES];
+    private final float[] mY = new float[MAX_SAMPLES];
+    private final long[] mTime = new long[MAX_SAMPLES];
+    // ring buffer: mCount samples ending at mLast
+    private int mLast = -1;
+    private int mCount;
+    private float mPredictedX, mPredictedY;
+
+    public void reset() {
+        mLast = -1;
+        mCount = 0;
+    }
+
+    public void addSample(float x, float y, long time) {
+        mLast = (mLast + 1) % MAX_SAMPLES;
+        mX[mLast] = x;
+        mY[mLast] = y;
+        mTime[mLast] = time;
+        if (mCount < MAX_SAMPLES) {
+            mCount++;
+        }
+    }
+
+    /**
+     * Predicts the position at {@code time}, see {@link #getPredictedX()} and
+     * {@link #getPredictedY()}. Without enough confidence in the velocity the
+     * prediction is the last sample.
+     *
+     * @return whether there were samples to predict from.
+     */
+    public boolean predict(long time) {
+        if (mCount == 0) {
+            return false;
+        }
+        final int last = mLast;
+        final long lastTime = mTime[last];
+        mPredictedX = mX[last];
+        mPredictedY = mY[last];
+
+        // least squares fit of x(t) and y(t) over the window, t relative to the last sample
+        int n = 0;
+        float sumT = 0, sumX = 0, sumY = 0, sumTT = 0, sumTX = 0, sumTY = 0;
+        long minInterval = Long.MAX_VALUE, maxInterval = 0;
+        for (int i = 0; i < mCount; i++) {
+            final int index = (last - i + MAX_SAMPLES) % MAX_SAMPLES;
+            final float t = mTime[index] - lastTime;
+            if (t < -WINDOW_MILLIS) {
+                break;
+            }
+            if (i > 0) {
+                final long interval = mTime[(index + 1) % MAX_SAMPLES] - mTime[index];
+                minInterval = Math.min(minInterval, interval);
+                maxInterval = Math.max(maxInterval, interval);
+            }
+            n++;
+            sumT += t;
+            sumX += mX[index];
+            sumY += mY[index];
+            sumTT += t * t;
+            sumTX += t * mX[index];
+            sumTY += t * mY[index];
+        }
+        final float denominator = n * sumTT - sumT * sumT;
+        // too few samples, or some much further apart than others
+        if (n < MIN_SAMPLES || denominator <= 0 || minInterval <= 0 || maxInterval > 2 * minInterval) {
+            return true;
+        }
+        final float velocityX = (n * sumTX - sumT * sumX) / denominator;
+        final float velocityY = (n * sumTY - sumT * sumY) / denominator;
+        final float meanT = sumT / n;
+        final float meanX = sumX / n;
+        final float meanY = sumY / n;
+
+        // how far the samples are from the fitted line
+        float sumSquares = 0;
+        for (int i = 0; i < n; i++) {
+            final int index = (last - i + MAX_SAMPLES) % MAX_SAMPLES;
+            final float t = mTime[index] - lastTime - meanT;
+            final float dx = mX[index] - meanX - velocityX * t;
+            final float dy = mY[index] - meanY - velocityY * t;
+            sumSquares += dx * dx + dy * dy;
+        }
+        if (sumSquares > MAX_RESIDUAL * MAX_RESIDUAL * n) {
+            return true;
+        }
+
+        // the last interval must go the way of the fit
+        final int previous = (last - 1 + MAX_SAMPLES) % MAX_SAMPLES;
+        final float lastDx = mX[last] - mX[previous];
+        final float lastDy = mY[last] - mY[previous];
+        final float lastDistance = (float) Math.hypot(lastDx, lastDy);
+        final float speed = (float) Math.hypot(velocityX, velocityY);
+        if (lastDistance == 0 || speed == 0
+                || lastDx * velocityX + lastDy * velocityY < MIN_TURN_COSINE * lastDistance * speed) {
+            return true;
+        }
+
+        // lead no further than the last interval at its own speed, so a
+        // finger slowing down is not overshot
+        final long ahead = time - lastTime;
+        final float lead = speed * ahead;
+        final float maxLead = lastDistance * ahead / (lastTime - mTime[previous]);
+        final float scale = lead > maxLead ? maxLead / lead : 1f;
+        mPredictedX += velocityX * ahead * scale;
+        mPredictedY += velocityY * ahead * scale;
+        return true;
+    }
+
+    public float getPredictedX() {
+        return mPredictedX;
+    }
+
+    public float getPredictedY() {
+        return mPredictedY;
+    }
+}
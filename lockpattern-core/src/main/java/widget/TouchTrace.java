@@ -0,0 +1,280 @@
+package widget;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A recorded stream of touch events on a pattern grid, with every historical
+ * sample and its event time, so a real swipe can be replayed exactly.
+ * <p/>
+ * Traces are saved as text, one event per line, to be kept next to the code as
+ * regression fixtures:
+ * <pre>
+ * lockpattern-trace 1
+ * grid 3 0.0 0.0 900.0 900.0 0.41
+ * expect 0,1,2
+ * down 1000 150.0 150.0
+ * move 1008 160.5 150.0 1016 240.0 151.5
+ * up 1100 750.0 150.0
+ * </pre>
+ * The grid line holds the size, left, top, width, height and hit factor of the
+ * grid (see {@link LockPatternEngine#setGeometry}); the optional expect line
+ * the pattern the trace must produce, as cell indices.
+ */
+public class TouchTrace {
+
+    // the values of the MotionEvent actions
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+    public static final int ACTION_MOVE = 2;
+    public static final int ACTION_CANCEL = 3;
+
+    private static final String HEADER = "lockpattern-trace 1";
+    private static final String[] ACTION_NAMES = {"down", "up", "move", "cancel"};
+
+    private int mGridSize = 3;
+    private float mLeft, mTop, mWidth, mHeight;
+    private float mHitFactor;
+    private LockPatternCode mExpected;
+
+    private int mEventCount;
+    private int[] mActions = new int[16];
+    // sample index of the first sample of each event
+    private int[] mEventStarts = new int[17];
+
+    private int mSampleCount;
+    private float[] mX = new float[64];
+    private float[] mY = new float[64];
+    private long[] mTime = new long[64];
+
+    /**
+     * Sets the geometry of the grid the trace is recorded on.
+     */
+    public void setGeometry(int gridSize, float left, float top, float width, float height,
+                            float hitFactor) {
+        mGridSize = gridSize;
+        mLeft = left;
+        mTop = top;
+        mWidth = width;
+        mHeight = height;
+        mHitFactor = hitFactor;
+    }
+
+    public int getGridSize() {
+        return mGridSize;
+    }
+
+    public float getLeft() {
+        return mLeft;
+    }
+
+    public float getTop() {
+        return mTop;
+    }
+
+    public float getWidth() {
+        return mWidth;
+    }
+
+    public float getHeight() {
+        return mHeight;
+    }
+
+    public float getHitFactor() {
+        return mHitFactor;
+    }
+
+    /**
+     * @param pattern The pattern replaying the trace must produce, or null.
+     */
+    public void setExpectedPattern(LockPatternCode pattern) {
+        mExpected = pattern;
+    }
+
+    /**
+     * @return the expected pattern, or null if the trace does not check it.
+     */
+    public LockPatternCode getExpectedPattern() {
+        return mExpected;
+    }
+
+    /**
+     * Starts a new event; add its samples, oldest first, with {@link #addSample}.
+     *
+     * @param action One of the {@code ACTION_} constants.
+     */
+    public void beginEvent(int action) {
+        if (action < ACTION_DOWN || action > ACTION_CANCEL) {
+            throw new IllegalArgumentException("unknown action " + action);
+        }
+        if (mEventCount == mActions.length) {
+            mActions = Arrays.copyOf(mActions, mEventCount * 2);
+            mEventStarts = Arrays.copyOf(mEventStarts, mEventCount * 2 + 1);
+        }
+        mActions[mEventCount] = action;
+        mEventStarts[mEventCount] = mSampleCount;
+        mEventCount++;
+        mEventStarts[mEventCount] = mSampleCount;
+    }
+
+    /**
+     * Adds a sample to the last event.
+     */
+    public void addSample(float x, float y, long time) {
+        if (mEventCount == 0) {
+            throw new IllegalStateException("no event");
+        }
+        if (mSampleCount == mX.length) {
+            mX = Arrays.copyOf(mX, mSampleCount * 2);
+            mY = Arrays.copyOf(mY, mSampleCount * 2);
+            mTime = Arrays.copyOf(mTime, mSampleCount * 2);
+        }
+        mX[mSampleCount] = x;
+        mY[mSampleCount] = y;
+        mTime[mSampleCount] = time;
+        mSampleCount++;
+        mEventStarts[mEventCount] = mSampleCount;
+    }
+
+    /**
+     * Drops all events, keeps the geometry.
+     */
+    public void clear() {
+        mEventCount = 0;
+        mSampleCount = 0;
+        mEventStarts[0] = 0;
+        mExpected = null;
+    }
+
+    public int getEventCount() {
+        return mEventCount;
+    }
+
+    public int getAction(int event) {
+        return mActions[event];
+    }
+
+    /**
+     * @return the index of the first sample of {@code event}.
+     */
+    public int getSampleStart(int event) {
+        return mEventStarts[event];
+    }
+
+    /**
+     * @return the index after the last sample of {@code event}; the last
+     * sample is the current one, those before it are historical.
+     */
+    public int getSampleEnd(int event) {
+        return mEventStarts[event + 1];
+    }
+
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    public float getX(int sample) {
+        return mX[sample];
+    }
+
+    public float getY(int sample) {
+        return mY[sample];
+    }
+
+    public long getTime(int sample) {
+        return mTime[sample];
+    }
+
+    public void write(Writer writer) throws IOException {
+        final StringBuilder line = new StringBuilder(256);
+        line.append(HEADER).append('\n');
+        line.append("grid ").append(mGridSize).append(' ').append(mLeft).append(' ').append(mTop)
+                .append(' ').append(mWidth).append(' ').append(mHeight).append(' ')
+                .append(mHitFactor).append('\n');
+        if (mExpected != null) {
+            line.append("expect ");
+            for (int i = 0; i < mExpected.size(); i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append(mExpected.cellIndexAt(i));
+            }
+            line.append('\n');
+        }
+        writer.write(line.toString());
+        for (int event = 0; event < mEventCount; event++) {
+            line.setLength(0);
+            line.append(ACTION_NAMES[mActions[event]]);
+            for (int i = mEventStarts[event], end = mEventStarts[event + 1]; i < end; i++) {
+                line.append(' ').append(mTime[i]).append(' ').append(mX[i]).append(' ').append(mY[i]);
+            }
+            writer.write(line.append('\n').toString());
+        }
+        writer.flush();
+    }
+
+    /**
+     * @throws IOException if the trace is malformed.
+     */
+    public static TouchTrace read(Reader reader) throws IOException {
+        final BufferedReader in = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader);
+        if (!HEADER.equals(in.readLine())) {
+            throw new IOException("not a lockpattern trace");
+        }
+        final TouchTrace trace = new TouchTrace();
+        String line;
+        int lineNumber = 1;
+        try {
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0 || line.charAt(0) == '#') {
+                    continue;
+                }
+                final String[] fields = line.split("\\s+");
+                final String name = fields[0];
+                if ("grid".equals(name)) {
+                    trace.setGeometry(Integer.parseInt(fields[1]), Float.parseFloat(fields[2]),
+                            Float.parseFloat(fields[3]), Float.parseFloat(fields[4]),
+                            Float.parseFloat(fields[5]), Float.parseFloat(fields[6]));
+                } else if ("expect".equals(name)) {
+                    trace.setExpectedPattern(parsePattern(fields.length > 1 ? fields[1] : "",
+                            trace.mGridSize));
+                } else {
+                    final int action = Arrays.asList(ACTION_NAMES).indexOf(name);
+                    if (action < 0 || fields.length < 4 || (fields.length - 1) % 3 != 0) {
+                        throw new IOException("bad event");
+                    }
+                    trace.beginEvent(action);
+                    for (int i = 1; i < fields.length; i += 3) {
+                        trace.addSample(Float.parseFloat(fields[i + 1]), Float.parseFloat(fields[i + 2]),
+                                Long.parseLong(fields[i]));
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // NumberFormatException, ArrayIndexOutOfBoundsException
+            throw new IOException("line " + lineNumber + ": " + e);
+        } catch (IOException e) {
+            throw new IOException("line " + lineNumber + ": " + e.getMessage());
+        }
+        return trace;
+    }
+
+    private static LockPatternCode parsePattern(String indices, int gridSize) {
+        final List<Cell> pattern = new ArrayList<Cell>();
+        if (indices.length() > 0) {
+            for (String index : indices.split(",")) {
+                final int cell = Integer.parseInt(index);
+                pattern.add(Cell.of(cell / gridSize, cell % gridSize));
+            }
+        }
+        return LockPatternCode.of(pattern, gridSize);
+    }
+}
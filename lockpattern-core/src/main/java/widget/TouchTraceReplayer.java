@@ -0,0 +1,311 @@
+package widget;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Replays a {@link TouchTrace} into a {@link LockPatternEngine}, on a plain
+ * JVM, timing every event.
+ * <p/>
+ * {@code main} replays trace files and fails if one of them no longer produces
+ * its expected pattern, so recorded swipes serve as regression fixtures. There
+ * is no view here, so nothing is invalidated; the app replays traces into the
+ * view itself with {@code LockPatternTraceReplay}, which also measures the
+ * invalidated area. The bounds a move redraws come from
+ * {@link LockPatternEngine#getMoveBounds}, so they are checked on the fixtures
+ * without a view.
+ */
+public class TouchTraceReplayer {
+
+    /**
+     * What a replay produced and how long each event took to process.
+     */
+    public static class Result {
+        private final long[] mEventNanos;
+        // null unless the replay measures it
+        private long[] mInvalidatedArea;
+        private final LockPatternCode mExpected;
+        private final Histogram mRawTipError = newTipErrorHistogram();
+        private final Histogram mPredictedTipError = newTipErrorHistogram();
+        private LockPatternCode mPattern;
+        private boolean mDetected;
+
+        Result(TouchTrace trace) {
+            mEventNanos = new long[trace.getEventCount()];
+            mExpected = trace.getExpectedPattern();
+        }
+
+        void setEvent(int event, long nanos) {
+            mEventNanos[event] = nanos;
+        }
+
+        void setEvent(int event, long nanos, long invalidatedArea) {
+            mEventNanos[event] = nanos;
+            if (mInvalidatedArea == null) {
+                mInvalidatedArea = new long[mEventNanos.length];
+            }
+            mInvalidatedArea[event] = invalidatedArea;
+        }
+
+        private static Histogram newTipErrorHistogram() {
+            return new Histogram(0, 1, 2, 3, 5, 8, 13, 21, 34, 55, 89, 144, 233);
+        }
+
+        void recordTipError(float raw, float predicted) {
+            mRawTipError.record(Math.round(raw));
+            mPredictedTipError.record(Math.round(predicted));
+        }
+
+        /**
+         * @return how far, in pixels, a tip drawn at the last sample of a move
+         * is from where the finger is {@link TouchPredictor#DEFAULT_HORIZON_MILLIS}
+         * later, over the moves where that is known.
+         */
+        public Histogram getRawTipError() {
+            return mRawTipError;
+        }
+
+        /**
+         * @return the same as {@link #getRawTipError()} for a tip predicted
+         * with {@link TouchPredictor}.
+         */
+        public Histogram getPredictedTipError() {
+            return mPredictedTipError;
+        }
+
+        void setPattern(LockPatternCode pattern, boolean detected) {
+            mPattern = pattern;
+            mDetected = detected;
+        }
+
+        public int getEventCount() {
+            return mEventNanos.length;
+        }
+
+        public long getEventNanos(int event) {
+            return mEventNanos[event];
+        }
+
+        /**
+         * @param percentile 0 to 100.
+         * @return the processing time of an event at {@code percentile}.
+         */
+        public long getEventNanosPercentile(int percentile) {
+            if (mEventNanos.length == 0) {
+                return 0;
+            }
+            final long[] sorted = mEventNanos.clone();
+            Arrays.sort(sorted);
+            return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+        }
+
+        public long getTotalNanos() {
+            long total = 0;
+            for (long nanos : mEventNanos) {
+                total += nanos;
+            }
+            return total;
+        }
+
+        /**
+         * @return whether the replay measured the invalidated area, which only
+         * a replay into a view does.
+         */
+        public boolean hasInvalidatedArea() {
+            return mInvalidatedArea != null;
+        }
+
+        /**
+         * @return the area, in pixels, invalidated while processing {@code event},
+         * or -1 if it was not measured.
+         */
+        public long getInvalidatedArea(int event) {
+            return mInvalidatedArea != null ? mInvalidatedArea[event] : -1;
+        }
+
+        /**
+         * @return the area invalidated by the whole trace, or -1 if it was not
+         * measured.
+         */
+        public long getTotalInvalidatedArea() {
+            if (mInvalidatedArea == null) {
+                return -1;
+            }
+            long total = 0;
+            for (long area : mInvalidatedArea) {
+                total += area;
+            }
+            return total;
+        }
+
+        /**
+         * @return the cells detected by the end of the trace.
+         */
+        public LockPatternCode getPattern() {
+            return mPattern;
+        }
+
+        /**
+         * @return whether the trace completed a pattern.
+         */
+        public boolean isDetected() {
+            return mDetected;
+        }
+
+        /**
+         * @return whether the pattern is the one the trace expects, true if it
+         * does not expect one.
+         */
+        public boolean isExpected() {
+            return mExpected == null || mExpected.equals(mPattern);
+        }
+
+        @Override
+        public String toString() {
+            return "events=" + getEventCount() + " pattern=" + mPattern
+                    + (mDetected ? " detected" : "") + (isExpected() ? "" : " expected=" + mExpected)
+                    + " p50=" + getEventNanosPercentile(50) / 1000f + "us"
+                    + " p99=" + getEventNanosPercentile(99) / 1000f + "us"
+                    + " total=" + getTotalNanos() / 1000f + "us"
+                    + (hasInvalidatedArea() ? " invalidated=" + getTotalInvalidatedArea() + "px" : "")
+                    + " tip error raw=" + mRawTipError.getMean() + "/" + mRawTipError.getPercentile(95)
+                    + "px predicted=" + mPredictedTipError.getMean() + "/"
+                    + mPredictedTipError.getPercentile(95) + "px (mean/p95)";
+        }
+    }
+
+    /**
+     * Replays {@code trace} into a new engine laid out like the grid the trace
+     * was recorded on. After every move it also measures how far the raw and
+     * the predicted rubber band tip are from the finger one frame later.
+     */
+    public static Result replay(TouchTrace trace) {
+        final LockPatternEngine engine = new LockPatternEngine(trace.getGridSize());
+        engine.setGeometry(trace.getLeft(), trace.getTop(), trace.getWidth(), trace.getHeight(),
+                trace.getHitFactor());
+        final Result result = new Result(trace);
+        final TouchPredictor predictor = new TouchPredictor();
+        final float[] finger = new float[2];
+        boolean detected = false;
+        for (int event = 0, count = trace.getEventCount(); event < count; event++) {
+            final int start = trace.getSampleStart(event);
+            final int last = trace.getSampleEnd(event) - 1;
+            final int action = trace.getAction(event);
+            if (action == TouchTrace.ACTION_DOWN) {
+                predictor.reset();
+            }
+            for (int i = start; i <= last; i++) {
+                predictor.addSample(trace.getX(i), trace.getY(i), trace.getTime(i));
+            }
+            final long begin = System.nanoTime();
+            switch (action) {
+                case TouchTrace.ACTION_DOWN:
+                    engine.onDown(trace.getX(last), trace.getY(last), trace.getTime(last));
+                    detected = false;
+                    break;
+                case TouchTrace.ACTION_MOVE:
+                    for (int i = start; i <= last; i++) {
+                        engine.onMove(trace.getX(i), trace.getY(i), trace.getTime(i));
+                    }
+                    break;
+                case TouchTrace.ACTION_UP:
+                    detected = engine.onUp(trace.getX(last), trace.getY(last), trace.getTime(last));
+                    break;
+                case TouchTrace.ACTION_CANCEL:
+                    engine.onCancel();
+                    break;
+            }
+            result.setEvent(event, System.nanoTime() - begin);
+
+            if (action == TouchTrace.ACTION_MOVE && engine.isPatternInProgress()) {
+                final long shown = trace.getTime(last) + TouchPredictor.DEFAULT_HORIZON_MILLIS;
+                if (positionAt(trace, event, shown, finger)) {
+                    final float x = trace.getX(last);
+                    final float y = trace.getY(last);
+                    predictor.predict(shown);
+                    final float limit = engine.getUnvisitedLimit(x, y,
+                            predictor.getPredictedX(), predictor.getPredictedY());
+                    final float predictedX = x + (predictor.getPredictedX() - x) * limit;
+                    final float predictedY = y + (predictor.getPredictedY() - y) * limit;
+                    result.recordTipError(distance(x, y, finger[0], finger[1]),
+                            distance(predictedX, predictedY, finger[0], finger[1]));
+                }
+            }
+        }
+        result.setPattern(engine.getPatternCode(), detected);
+        return result;
+    }
+
+    /**
+     * Interpolates where the finger of the gesture that {@code event} belongs
+     * to was at {@code time}.
+     *
+     * @return false if the gesture ended before {@code time}.
+     */
+    private static boolean positionAt(TouchTrace trace, int event, long time, float[] position) {
+        for (int e = event, count = trace.getEventCount(); e < count; e++) {
+            final int action = trace.getAction(e);
+            if (action == TouchTrace.ACTION_DOWN || action == TouchTrace.ACTION_CANCEL) {
+                return false;
+            }
+            for (int i = Math.max(trace.getSampleStart(e), 1), end = trace.getSampleEnd(e); i < end; i++) {
+                final long time0 = trace.getTime(i - 1);
+                final long time1 = trace.getTime(i);
+                if (time1 >= time && time0 <= time) {
+                    final float f = time1 == time0 ? 1f : (float) (time - time0) / (time1 - time0);
+                    position[0] = trace.getX(i - 1) + (trace.getX(i) - trace.getX(i - 1)) * f;
+                    position[1] = trace.getY(i - 1) + (trace.getY(i) - trace.getY(i - 1)) * f;
+                    return true;
+                }
+            }
+            if (action == TouchTrace.ACTION_UP) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static float distance(float x0, float y0, float x1, float y1) {
+        return (float) Math.hypot(x1 - x0, y1 - y0);
+    }
+
+    /**
+     * Replays trace files and prints the results; exits with 1 if a trace did
+     * not produce its expected pattern.
+     * <p/>
+     * Usage: {@code TouchTraceReplayer [-runs N] trace...}; timings are those
+     * of the last of N runs, so the earlier ones warm up the JIT.
+     */
+    public static void main(String[] args) throws IOException {
+        int runs = 1;
+        int first = 0;
+        if (args.length > 1 && "-runs".equals(args[0])) {
+            runs = Integer.parseInt(args[1]);
+            first = 2;
+        }
+        int failures = 0;
+        for (int i = first; i < args.length; i++) {
+            final Reader reader = new InputStreamReader(new FileInputStream(args[i]), "UTF-8");
+            final TouchTrace trace;
+            try {
+                trace = TouchTrace.read(reader);
+            } finally {
+                reader.close();
+            }
+            Result result = null;
+            for (int run = 0; run < runs; run++) {
+                result = replay(trace);
+            }
+            if (!result.isExpected()) {
+                failures++;
+            }
+            System.out.println((result.isExpected() ? "OK   " : "FAIL ") + args[i] + " " + result);
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package widget;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LockPatternCodeTest {
+
+    /**
+     * @return a pattern of {@code length} cells walking the grid in index
+     * order, wrapping around.
+     */
+    private static List<Cell> walk(int gridSize, int length, int first) {
+        final List<Cell> pattern = new ArrayList<Cell>();
+        for (int i = 0; i < length; i++) {
+            final int index = (first + i) % (gridSize * gridSize);
+            pattern.add(Cell.of(index / gridSize, index % gridSize));
+        }
+        return pattern;
+    }
+
+    @Test
+    public void roundTripsThroughTheStoredString() {
+        for (int gridSize = 3; gridSize <= Cell.MAX_GRID_SIZE; gridSize++) {
+            final int cells = gridSize * gridSize;
+            for (int length = 0; length <= cells; length += Math.max(1, cells / 7)) {
+                final List<Cell> pattern = walk(gridSize, length, gridSize - 1);
+                final LockPatternCode code = LockPatternCode.of(pattern, gridSize);
+                final String string = LockPatternCode.patternToString(pattern, gridSize);
+
+                assertEquals(string, code.toPatternString());
+                assertEquals(code, LockPatternCode.fromString(string, gridSize));
+                assertEquals(pattern, LockPatternCode.stringToPattern(string, gridSize));
+                assertEquals(length, code.size());
+                for (int i = 0; i < length; i++) {
+                    assertEquals(pattern.get(i), code.cellAt(i));
+                }
+                assertTrue(code.matches(pattern));
+            }
+        }
+    }
+
+    @Test
+    public void equalityFollowsTheCells() {
+        final LockPatternCode code = LockPatternCode.of(walk(3, 5, 0), 3);
+        assertEquals(code, LockPatternCode.of(walk(3, 5, 0), 3));
+        assertEquals(code.hashCode(), LockPatternCode.of(walk(3, 5, 0), 3).hashCode());
+        assertNotEquals(code, LockPatternCode.of(walk(3, 5, 1), 3));
+        assertNotEquals(code, LockPatternCode.of(walk(3, 4, 0), 3));
+        // same indices on another grid
+        assertNotEquals(code, LockPatternCode.fromString(code.toPatternString(), 4));
+
+        final LockPatternCode wide = LockPatternCode.of(walk(7, 30, 3), 7);
+        assertEquals(wide, LockPatternCode.of(walk(7, 30, 3), 7));
+        assertNotEquals(wide, LockPatternCode.of(walk(7, 30, 4), 7));
+    }
+
+    @Test
+    public void matchesRejectsOtherPatterns() {
+        final LockPatternCode code = LockPatternCode.of(walk(3, 5, 0), 3);
+        assertFalse(code.matches(walk(3, 5, 1)));
+        assertFalse(code.matches(walk(3, 4, 0)));
+        assertFalse(code.matches(null));
+        // (0, 3) is off a 3 X 3 grid, though row * 3 + column is the index at that position
+        final List<Cell> outside = walk(3, 5, 0);
+        outside.set(3, Cell.of(0, 3));
+        assertFalse(code.matches(outside));
+    }
+
+    @Test
+    public void rejectsCompactPatternsLongerThanTheWord() {
+        try {
+            LockPatternCode.of(walk(4, 17, 0), 4);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            LockPatternCode.fromString(LockPatternCode.patternToString(walk(4, 17, 0), 4), 4);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCellsOutsideTheGrid() {
+        LockPatternCode.fromString("\u0000\u0009", 3);
+    }
+
+    @Test
+    public void stringToPatternRejectsCellsOutsideTheGrid() {
+        // saved on a 4 X 4 grid, restored on a 3 X 3 one
+        final String string = LockPatternCode.patternToString(walk(4, 4, 12), 4);
+        try {
+            LockPatternCode.stringToPattern(string, 3);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(walk(4, 4, 12), LockPatternCode.stringToPattern(string, 4));
+    }
+}
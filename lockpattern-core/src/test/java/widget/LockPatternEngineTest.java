@@ -0,0 +1,141 @@
+package widget;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LockPatternEngineTest {
+
+    private static final float SIZE = 900f;
+    private static final float HIT_FACTOR = 0.41f;
+
+    private static LockPatternEngine newEngine(int gridSize) {
+        final LockPatternEngine engine = new LockPatternEngine(gridSize);
+        engine.setGeometry(0, 0, SIZE, SIZE, HIT_FACTOR);
+        return engine;
+    }
+
+    /**
+     * Every cell whose hit zone a random segment clearly crosses is added, in
+     * the order the segment reaches it. Hit zones the segment only grazes,
+     * within rounding, may go either way.
+     */
+    @Test
+    public void sweepMatchesBruteForceHitTesting() {
+        final Random random = new Random(1);
+        for (int gridSize : new int[]{3, 5, 10}) {
+            final LockPatternEngine engine = newEngine(gridSize);
+            final float square = SIZE / gridSize;
+            final float radius = square * HIT_FACTOR / 2;
+            for (int n = 0; n < 20000; n++) {
+                final float x0 = random.nextFloat() * 1000 - 50, y0 = random.nextFloat() * 1000 - 50;
+                final float x1 = random.nextFloat() * 1000 - 50, y1 = random.nextFloat() * 1000 - 50;
+                engine.onDown(x0, y0, 0);
+                engine.onMove(x1, y1, 1);
+                final List<Cell> pattern = engine.getPattern();
+
+                // cells crossed, by the position along the segment closest to their center
+                final Map<Float, Cell> expected = new TreeMap<Float, Cell>();
+                final float dx = x1 - x0, dy = y1 - y0;
+                final float lengthSquared = dx * dx + dy * dy;
+                for (int row = 0; row < gridSize; row++) {
+                    for (int column = 0; column < gridSize; column++) {
+                        final float cx = column * square + square / 2, cy = row * square + square / 2;
+                        float t = lengthSquared > 0 ? ((cx - x0) * dx + (cy - y0) * dy) / lengthSquared : 0;
+                        t = Math.max(0, Math.min(1, t));
+                        final float ex = x0 + t * dx - cx, ey = y0 + t * dy - cy;
+                        if (ex * ex + ey * ey <= radius * radius * 0.999f) {
+                            expected.put(t + (row * gridSize + column) * 1e-7f, Cell.of(row, column));
+                        }
+                    }
+                }
+                int last = -1;
+                for (Cell cell : expected.values()) {
+                    final int index = pattern.indexOf(cell);
+                    if (index <= last) {
+                        fail(x0 + "," + y0 + " -> " + x1 + "," + y1 + " on " + gridSize
+                                + ": got " + pattern + ", expected " + expected.values());
+                    }
+                    last = index;
+                }
+                engine.onCancel();
+            }
+        }
+    }
+
+    @Test
+    public void unvisitedLimitStopsAtTheFirstNewHitZone() {
+        final LockPatternEngine engine = newEngine(3);
+        engine.onDown(150, 150, 0);
+        // from the first cell towards the middle one: stops at the edge of its hit zone
+        final float radius = 300 * HIT_FACTOR / 2;
+        final float limit = engine.getUnvisitedLimit(150, 150, 450, 150);
+        assertEquals((300 - radius) / 300, limit, 1e-4f);
+        // nothing new on the way
+        assertEquals(1f, engine.getUnvisitedLimit(150, 150, 150, 160), 0f);
+        // the cells of the pattern do not stop it
+        assertEquals(1f, engine.getUnvisitedLimit(140, 150, 160, 150), 0f);
+    }
+
+    @Test
+    public void ignoresSamplesOutsideTheHitZones() {
+        final LockPatternEngine engine = newEngine(3);
+        assertNull(engine.onDown(10, 10, 0));
+        assertEquals(0, engine.getPattern().size());
+    }
+
+    /**
+     * A whole gesture through every cell of a 10 X 10 grid, many samples per
+     * cell, allocates nothing once warmed up. The view runs this on every
+     * touch event.
+     */
+    @Test
+    public void gesturesDoNotAllocate() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        final LockPatternEngine engine = newEngine(10);
+        final float[] path = new float[2 * 100 * 8];
+        for (int cell = 0, i = 0; cell < 100; cell++) {
+            final int row = cell / 10;
+            final int column = row % 2 == 0 ? cell % 10 : 9 - cell % 10;
+            for (int s = 0; s < 8; s++) {
+                path[i++] = column * 90 + 45 + (row % 2 == 0 ? s : -s) * 5;
+                path[i++] = row * 90 + 45;
+            }
+        }
+        for (int run = 0; run < 10000; run++) {
+            gesture(engine, path);
+        }
+        final long id = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(id);
+        for (int run = 0; run < 100; run++) {
+            gesture(engine, path);
+        }
+        // reading the counter itself may allocate a little
+        assertTrue(threads.getThreadAllocatedBytes(id) - before < 256);
+        assertEquals(100, engine.getPattern().size());
+    }
+
+    private static void gesture(LockPatternEngine engine, float[] path) {
+        engine.onDown(path[0], path[1], 0);
+        for (int i = 2; i < path.length; i += 2) {
+            engine.onMove(path[i], path[i + 1], i);
+        }
+        engine.onUp(path[path.length - 2], path[path.length - 1], path.length);
+    }
+}
@@ -0,0 +1,94 @@
+package widget;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LockPatternGapTableTest {
+
+    private static List<Cell> between(LockPatternGapTable table, Cell from, Cell to) {
+        final List<Cell> cells = new ArrayList<Cell>();
+        final int pair = table.pairIndex(from, to);
+        for (int i = table.start(pair), end = table.start(pair + 1); i < end; i++) {
+            cells.add(table.cell(i));
+        }
+        return cells;
+    }
+
+    /**
+     * The gap rule of the original 3 X 3 view: a jump of two rows and/or two
+     * columns, but not a knight's move, fills the cell in the middle.
+     */
+    private static List<Cell> deltaTwoRule(Cell from, Cell to) {
+        final int dRow = to.row - from.row;
+        final int dColumn = to.column - from.column;
+        int fillInRow = from.row;
+        int fillInColumn = from.column;
+        if (Math.abs(dRow) == 2 && Math.abs(dColumn) != 1) {
+            fillInRow = from.row + (dRow > 0 ? 1 : -1);
+        }
+        if (Math.abs(dColumn) == 2 && Math.abs(dRow) != 1) {
+            fillInColumn = from.column + (dColumn > 0 ? 1 : -1);
+        }
+        final List<Cell> cells = new ArrayList<Cell>();
+        if (fillInRow != from.row || fillInColumn != from.column) {
+            cells.add(Cell.of(fillInRow, fillInColumn));
+        }
+        return cells;
+    }
+
+    @Test
+    public void matchesTheDeltaTwoRuleOnThreeByThree() {
+        final LockPatternGapTable table = LockPatternGapTable.forGridSize(3);
+        for (int from = 0; from < 9; from++) {
+            for (int to = 0; to < 9; to++) {
+                if (from == to) {
+                    continue;
+                }
+                final Cell a = Cell.of(from / 3, from % 3);
+                final Cell b = Cell.of(to / 3, to % 3);
+                assertEquals(a + " -> " + b, deltaTwoRule(a, b), between(table, a, b));
+            }
+        }
+    }
+
+    @Test
+    public void holdsEveryCellOnTheSegmentInOrder() {
+        for (int gridSize = 1; gridSize <= Cell.MAX_GRID_SIZE; gridSize++) {
+            final LockPatternGapTable table = LockPatternGapTable.forGridSize(gridSize);
+            final int cellCount = gridSize * gridSize;
+            for (int from = 0; from < cellCount; from++) {
+                for (int to = 0; to < cellCount; to++) {
+                    final Cell a = Cell.of(from / gridSize, from % gridSize);
+                    final Cell b = Cell.of(to / gridSize, to % gridSize);
+                    // brute force: cells strictly between a and b on the segment,
+                    // ordered by distance from a
+                    final List<Cell> expected = new ArrayList<Cell>();
+                    final int dRow = b.row - a.row;
+                    final int dColumn = b.column - a.column;
+                    final int steps = Math.max(Math.abs(dRow), Math.abs(dColumn));
+                    for (int i = 1; i < steps; i++) {
+                        if (dRow * i % steps == 0 && dColumn * i % steps == 0) {
+                            expected.add(Cell.of(a.row + dRow * i / steps, a.column + dColumn * i / steps));
+                        }
+                    }
+                    assertEquals(gridSize + ": " + a + " -> " + b, expected, between(table, a, b));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sharesOneTablePerGridSize() {
+        assertEquals(LockPatternGapTable.forGridSize(5), LockPatternGapTable.forGridSize(5));
+        assertEquals(7, LockPatternGapTable.forGridSize(7).getGridSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsGridsLargerThanTheMaximum() {
+        LockPatternGapTable.forGridSize(Cell.MAX_GRID_SIZE + 1);
+    }
+}
@@ -0,0 +1,74 @@
+package widget;
+
+import org.junit.Test;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LockPatternHasherTest {
+
+    private static final LockPatternCode PATTERN = LockPatternCode.fromString("\u0000\u0001\u0002\u0005\u0008", 3);
+
+    /**
+     * PBKDF2 of the JDK; its password chars are encoded as UTF-8, which is
+     * the bytes themselves below 0x80.
+     */
+    private static byte[] jdkPbkdf2(byte[] secret, byte[] salt, int iterations) throws Exception {
+        final char[] password = new char[secret.length];
+        for (int i = 0; i < secret.length; i++) {
+            password[i] = (char) secret[i];
+        }
+        return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                .generateSecret(new PBEKeySpec(password, salt, iterations, 256)).getEncoded();
+    }
+
+    @Test
+    public void pbkdf2MatchesTheJdk() throws Exception {
+        final byte[] salt = new byte[16];
+        for (int i = 0; i < salt.length; i++) {
+            salt[i] = (byte) (i * 37 - 100);
+        }
+        final byte[][] secrets = {{3}, {3, 0, 4, 8, 5, 2}, {10, 99, 98, 97, 0, 11, 22, 33, 44, 55, 66, 77}};
+        for (byte[] secret : secrets) {
+            for (int iterations : new int[]{1, 2, 1000, 4321}) {
+                assertArrayEquals(jdkPbkdf2(secret, salt, iterations),
+                        LockPatternHasher.pbkdf2(secret, salt, iterations));
+            }
+        }
+    }
+
+    @Test
+    public void verifiesItsOwnHashes() {
+        final LockPatternHasher hasher = new LockPatternHasher(LockPatternHasher.MIN_ITERATIONS);
+        final String stored = hasher.hash(PATTERN);
+        assertTrue(LockPatternHasher.isHashed(stored));
+        assertEquals(LockPatternHasher.MIN_ITERATIONS, LockPatternHasher.getIterations(stored));
+        assertTrue(LockPatternHasher.verify(stored, PATTERN));
+        assertFalse(LockPatternHasher.verify(stored,
+                LockPatternCode.fromString("\u0000\u0001\u0002\u0005", 3)));
+        // the same cell indices on another grid are another pattern
+        assertFalse(LockPatternHasher.verify(stored,
+                LockPatternCode.fromString(PATTERN.toPatternString(), 4)));
+    }
+
+    @Test
+    public void saltsEveryHash() {
+        final LockPatternHasher hasher = new LockPatternHasher(LockPatternHasher.MIN_ITERATIONS);
+        assertNotEquals(hasher.hash(PATTERN), hasher.hash(PATTERN));
+    }
+
+    @Test
+    public void storedFormRoundTrips() {
+        final String stored = new LockPatternHasher(LockPatternHasher.MIN_ITERATIONS).hash(PATTERN);
+        assertEquals(stored, LockPatternHasher.toStored(LockPatternHasher.getIterations(stored),
+                LockPatternHasher.getSalt(stored), LockPatternHasher.getDigest(stored)));
+        assertFalse(LockPatternHasher.isHashed(PATTERN.toPatternString()));
+        assertFalse(LockPatternHasher.isHashed(null));
+    }
+}
@@ -0,0 +1,186 @@
+package widget;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LockPatternStoreTest {
+
+    private static final String PLAIN = "\u0000\u0001\u0002\u0005\u0008";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private File mFile;
+    private LockPatternStore mStore;
+
+    @Before
+    public void setUp() {
+        mFile = new File(mFolder.getRoot(), "pattern");
+        mStore = new LockPatternStore(mFile);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mStore.close();
+    }
+
+    /**
+     * @return a store on the same file with nothing cached, as after a restart.
+     */
+    private LockPatternStore reopen() throws InterruptedException {
+        mStore.close();
+        mStore = new LockPatternStore(mFile);
+        return mStore;
+    }
+
+    private static String hash(String pattern) {
+        return new LockPatternHasher(LockPatternHasher.MIN_ITERATIONS)
+                .hash(LockPatternCode.fromString(pattern, 3));
+    }
+
+    @Test
+    public void missingFileIsNoPattern() {
+        assertNull(mStore.getStoredPattern());
+        assertFalse(mStore.hasPattern());
+        assertFalse(mStore.isCorrupt());
+    }
+
+    @Test
+    public void roundTripsHashAndPlainPatterns() throws Exception {
+        final String hashed = hash(PLAIN);
+        mStore.setStoredPattern(hashed);
+        assertEquals(hashed, mStore.getStoredPattern());
+        mStore.flush();
+        assertEquals(hashed, reopen().getStoredPattern());
+
+        mStore.setStoredPattern(PLAIN);
+        mStore.flush();
+        assertEquals(PLAIN, reopen().getStoredPattern());
+        assertTrue(mStore.hasPattern());
+        assertFalse(mStore.isCorrupt());
+    }
+
+    @Test
+    public void clearRemovesTheRecord() throws Exception {
+        mStore.setStoredPattern(PLAIN);
+        mStore.clear();
+        assertNull(mStore.getStoredPattern());
+        mStore.flush();
+        assertFalse(mFile.exists());
+        assertFalse(reopen().hasPattern());
+    }
+
+    @Test
+    public void lastWriteWins() throws Exception {
+        String last = null;
+        for (int i = 0; i < 50; i++) {
+            last = PLAIN.substring(0, 1 + i % PLAIN.length()) + (char) (i % 9);
+            mStore.setStoredPattern(last);
+        }
+        assertEquals(last, mStore.getStoredPattern());
+        mStore.flush();
+        assertEquals(last, reopen().getStoredPattern());
+    }
+
+    @Test
+    public void corruptRecordStaysLocked() throws Exception {
+        mStore.setStoredPattern(hash(PLAIN));
+        mStore.flush();
+        // flip a bit of the CRC
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(file.length() - 1);
+            final int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 1);
+        } finally {
+            file.close();
+        }
+
+        reopen();
+        assertTrue(mStore.isCorrupt());
+        assertTrue(mStore.hasPattern());
+        assertNull(mStore.getStoredPattern());
+
+        // a new pattern replaces the damaged record
+        mStore.setStoredPattern(PLAIN);
+        mStore.flush();
+        assertEquals(PLAIN, reopen().getStoredPattern());
+        assertFalse(mStore.isCorrupt());
+    }
+
+    @Test
+    public void truncatedRecordIsCorrupt() throws Exception {
+        mStore.setStoredPattern(PLAIN);
+        mStore.flush();
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(file.length() - 2);
+        } finally {
+            file.close();
+        }
+        assertTrue(reopen().isCorrupt());
+    }
+
+    @Test
+    public void rejectsMalformedHashesOnTheCallerThread() {
+        try {
+            mStore.setStoredPattern("pbkdf2-sha256$notanumber$00$00");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertNull(mStore.getStoredPattern());
+    }
+
+    @Test
+    public void flushReportsWriteFailures() throws Exception {
+        final LockPatternStore store = new LockPatternStore(
+                new File(new File(mFolder.getRoot(), "missing"), "pattern"));
+        try {
+            store.setStoredPattern(PLAIN);
+            store.flush();
+            fail();
+        } catch (IOException expected) {
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void rejectsFieldsLongerThanTheirLengthByte() {
+        final String stored = LockPatternHasher.toStored(LockPatternHasher.MIN_ITERATIONS,
+                new byte[256], new byte[32]);
+        try {
+            mStore.setStoredPattern(stored);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertNull(mStore.getStoredPattern());
+    }
+
+    @Test
+    public void writerDoesNotKeepTheProcessAlive() throws Exception {
+        mStore.setStoredPattern(PLAIN);
+        mStore.flush();
+        boolean found = false;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("LockPatternStore".equals(thread.getName())) {
+                found = true;
+                assertTrue(thread.isDaemon());
+            }
+        }
+        assertTrue(found);
+    }
+}
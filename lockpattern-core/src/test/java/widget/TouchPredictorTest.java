@@ -0,0 +1,74 @@
+package widget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TouchPredictorTest {
+
+    private static final float DELTA = 1e-3f;
+
+    @Test
+    public void predictsNothingWithoutSamples() {
+        assertFalse(new TouchPredictor().predict(100));
+    }
+
+    @Test
+    public void leadsAFingerMovingSteadily() {
+        final TouchPredictor predictor = new TouchPredictor();
+        for (int i = 0; i <= 4; i++) {
+            predictor.addSample(100 + 2 * i * 4, 200 - i * 4, 1000 + i * 4);
+        }
+        assertTrue(predictor.predict(1016 + TouchPredictor.DEFAULT_HORIZON_MILLIS));
+        assertEquals(132 + 2 * TouchPredictor.DEFAULT_HORIZON_MILLIS, predictor.getPredictedX(), DELTA);
+        assertEquals(184 - TouchPredictor.DEFAULT_HORIZON_MILLIS, predictor.getPredictedY(), DELTA);
+    }
+
+    @Test
+    public void fallsBackToTheLastSampleWhenSparse() {
+        final TouchPredictor predictor = new TouchPredictor();
+        predictor.addSample(100, 100, 1000);
+        predictor.addSample(200, 100, 1016);
+        assertTrue(predictor.predict(1032));
+        assertEquals(200, predictor.getPredictedX(), 0f);
+        assertEquals(100, predictor.getPredictedY(), 0f);
+    }
+
+    @Test
+    public void fallsBackToTheLastSampleWhenIrregular() {
+        final TouchPredictor predictor = new TouchPredictor();
+        predictor.addSample(100, 100, 1000);
+        predictor.addSample(104, 100, 1004);
+        predictor.addSample(108, 100, 1008);
+        predictor.addSample(140, 100, 1040);
+        assertTrue(predictor.predict(1056));
+        assertEquals(140, predictor.getPredictedX(), 0f);
+    }
+
+    @Test
+    public void fallsBackToTheLastSampleAroundACorner() {
+        final TouchPredictor predictor = new TouchPredictor();
+        predictor.addSample(100, 100, 1000);
+        predictor.addSample(120, 100, 1008);
+        predictor.addSample(140, 100, 1016);
+        predictor.addSample(140, 120, 1024);
+        assertTrue(predictor.predict(1040));
+        assertEquals(140, predictor.getPredictedX(), 0f);
+        assertEquals(120, predictor.getPredictedY(), 0f);
+    }
+
+    @Test
+    public void clampsTheLeadOfAFingerSlowingDown() {
+        final TouchPredictor predictor = new TouchPredictor();
+        // 2.5, 2, then 1.5 px per ms along x; the fit says 2
+        predictor.addSample(0, 0, 1000);
+        predictor.addSample(10, 0, 1004);
+        predictor.addSample(18, 0, 1008);
+        predictor.addSample(24, 0, 1012);
+        assertTrue(predictor.predict(1028));
+        // no further than the last interval's speed over 16ms
+        assertEquals(24 + 1.5f * 16, predictor.getPredictedX(), DELTA);
+    }
+}
@@ -0,0 +1,150 @@
+package widget;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the recorded fixtures in {@code traces/}.
+ */
+public class TouchTraceReplayerTest {
+
+    private static final File TRACES = new File("traces");
+    private static final String[] FIXTURES = {
+            "fast_flick.trace", "l_shape.trace", "smooth_swipe.trace", "sparse_diagonal.trace"};
+
+    // warm runs before the timed one, so the JIT has compiled the engine
+    private static final int WARM_UP_RUNS = 200;
+    // processing one event must stay well inside a 16ms frame
+    private static final long MAX_EVENT_NANOS = 1000000;
+
+    static TouchTrace readFixture(String name) throws IOException {
+        final Reader reader = new InputStreamReader(new FileInputStream(new File(TRACES, name)), "UTF-8");
+        try {
+            return TouchTrace.read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void fixturesAreAllReplayed() {
+        final String[] files = TRACES.list();
+        Arrays.sort(files);
+        assertEquals(Arrays.asList(FIXTURES), Arrays.asList(files));
+    }
+
+    @Test
+    public void fixturesDetectTheirPattern() throws IOException {
+        for (String fixture : FIXTURES) {
+            final TouchTrace trace = readFixture(fixture);
+            final TouchTraceReplayer.Result result = TouchTraceReplayer.replay(trace);
+            assertTrue(fixture + " " + result, result.isDetected());
+            assertEquals(fixture, trace.getExpectedPattern(), result.getPattern());
+        }
+    }
+
+    @Test
+    public void eventsAreProcessedWithinAFractionOfAFrame() throws IOException {
+        for (String fixture : FIXTURES) {
+            final TouchTrace trace = readFixture(fixture);
+            TouchTraceReplayer.Result result = null;
+            for (int run = 0; run <= WARM_UP_RUNS; run++) {
+                result = TouchTraceReplayer.replay(trace);
+            }
+            assertEquals(trace.getEventCount(), result.getEventCount());
+            assertTrue(fixture + " " + result, result.getEventNanosPercentile(100) < MAX_EVENT_NANOS);
+        }
+    }
+
+    @Test
+    public void predictedTipIsNoWorseThanRaw() throws IOException {
+        for (String fixture : FIXTURES) {
+            final TouchTraceReplayer.Result result = TouchTraceReplayer.replay(readFixture(fixture));
+            final Histogram raw = result.getRawTipError();
+            final Histogram predicted = result.getPredictedTipError();
+            assertEquals(fixture, raw.getCount(), predicted.getCount());
+            assertTrue(fixture + " " + result, predicted.getMean() <= raw.getMean());
+            assertTrue(fixture + " " + result, predicted.getPercentile(95) <= raw.getPercentile(95));
+            assertTrue(fixture + " " + result, predicted.getMax() <= raw.getMax());
+        }
+    }
+
+    @Test
+    public void movesOnlyRedrawWhatTheyChange() throws IOException {
+        for (String fixture : FIXTURES) {
+            final TouchTrace trace = readFixture(fixture);
+            final LockPatternEngine engine = new LockPatternEngine(trace.getGridSize());
+            engine.setGeometry(trace.getLeft(), trace.getTop(), trace.getWidth(), trace.getHeight(),
+                    trace.getHitFactor());
+            // half the line width of the view
+            final float radius = engine.getSquareWidth() * 0.05f;
+            final float viewArea = trace.getWidth() * trace.getHeight();
+            final float[] bounds = new float[4];
+            int moves = 0;
+            for (int event = 0, count = trace.getEventCount(); event < count; event++) {
+                final int last = trace.getSampleEnd(event) - 1;
+                switch (trace.getAction(event)) {
+                    case TouchTrace.ACTION_DOWN:
+                        engine.onDown(trace.getX(last), trace.getY(last), trace.getTime(last));
+                        break;
+                    case TouchTrace.ACTION_MOVE:
+                        for (int i = trace.getSampleStart(event); i <= last; i++) {
+                            final float x = trace.getX(i);
+                            final float y = trace.getY(i);
+                            final int sizeBefore = engine.getPattern().size();
+                            engine.onMove(x, y, trace.getTime(i));
+                            assertTrue(engine.getMoveBounds(sizeBefore, x, y, radius, bounds));
+                            final String sample = fixture + " sample " + i + " " + Arrays.toString(bounds);
+                            moves++;
+
+                            // the band to the finger and every cell the sample added
+                            assertTrue(sample, contains(bounds, x - radius, y - radius, x + radius, y + radius));
+                            for (int k = sizeBefore; k < engine.getPattern().size(); k++) {
+                                final Cell cell = engine.getPattern().get(k);
+                                final float cellX = engine.getCenterXForColumn(cell.column);
+                                final float cellY = engine.getCenterYForRow(cell.row);
+                                assertTrue(sample, contains(bounds,
+                                        cellX - engine.getSquareWidth() / 2, cellY - engine.getSquareHeight() / 2,
+                                        cellX + engine.getSquareWidth() / 2, cellY + engine.getSquareHeight() / 2));
+                            }
+                            // and never the whole view
+                            assertTrue(sample, (bounds[2] - bounds[0]) * (bounds[3] - bounds[1]) < viewArea);
+                        }
+                        break;
+                    case TouchTrace.ACTION_UP:
+                        engine.onUp(trace.getX(last), trace.getY(last), trace.getTime(last));
+                        assertFalse(engine.getMoveBounds(engine.getPattern().size(),
+                                trace.getX(last), trace.getY(last), radius, bounds));
+                        break;
+                }
+            }
+            assertTrue(fixture, moves > 0);
+        }
+    }
+
+    private static boolean contains(float[] bounds, float left, float top, float right, float bottom) {
+        return bounds[0] <= left && bounds[1] <= top && bounds[2] >= right && bounds[3] >= bottom;
+    }
+
+    @Test
+    public void invalidatedAreaIsOnlyReportedWhenMeasured() throws IOException {
+        final TouchTraceReplayer.Result result = TouchTraceReplayer.replay(readFixture(FIXTURES[0]));
+        assertFalse(result.hasInvalidatedArea());
+        assertEquals(-1, result.getTotalInvalidatedArea());
+        assertFalse(result.toString().contains("invalidated"));
+
+        result.setEvent(0, 1000, 2500);
+        assertTrue(result.hasInvalidatedArea());
+        assertEquals(2500, result.getTotalInvalidatedArea());
+    }
+}